@@ -0,0 +1,45 @@
+package com.rogaiopytov;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Экранирование строк .properties, по одной строке на файл.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class AsciiBenchmark {
+
+	@Param({ "100", "1000", "10000", "50000" })
+	public int files;
+
+	private String[] lines;
+	private final AsciiMojo mojo = new AsciiMojo();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		lines = SyntheticFiles.propertyLines(files);
+	}
+
+	@Benchmark
+	public void toAsciiEscaped(Blackhole blackhole) {
+		for (String line : lines) {
+			blackhole.consume(mojo.toAsciiEscaped(line));
+		}
+	}
+}
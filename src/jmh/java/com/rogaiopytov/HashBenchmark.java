@@ -0,0 +1,61 @@
+package com.rogaiopytov;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// MD5 и SHA-1 для каждого файла за одно чтение, как их считает цель hash.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class HashBenchmark {
+
+	@Param({ "100", "1000", "10000", "50000" })
+	public int files;
+
+	private Path dir;
+	private File[] inputs;
+	private FileHasher hasher;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, NoSuchAlgorithmException {
+		hasher = new FileHasher(List.of("MD5", "SHA-1"));
+		dir = Files.createTempDirectory("rik-hash-bench");
+		SyntheticFiles.createFiles(dir, files, ".java", 2048);
+		inputs = dir.toFile().listFiles();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SyntheticFiles.deleteRecursively(dir);
+	}
+
+	@Benchmark
+	public void hashFiles(Blackhole blackhole) throws IOException {
+		for (File file : inputs) {
+			blackhole.consume(hasher.hash(file.toPath()));
+		}
+	}
+}
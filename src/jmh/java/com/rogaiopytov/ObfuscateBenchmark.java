@@ -0,0 +1,66 @@
+package com.rogaiopytov;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.testing.SilentLog;
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Полный прогон цели obfuscate: поиск маппингов, замена, копирование в obfs и
+// переименование файлов.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class ObfuscateBenchmark {
+
+	@Param({ "100", "1000", "10000", "50000" })
+	public int files;
+
+	private Path baseDir;
+	private MavenProject project;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		baseDir = Files.createTempDirectory("rik-obfuscate-bench");
+		SyntheticFiles.createProject(baseDir, files);
+		project = new MavenProject();
+		project.setFile(baseDir.resolve("pom.xml").toFile());
+		project.getBuild().setDirectory(new File(baseDir.toFile(), "target").getAbsolutePath());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SyntheticFiles.deleteRecursively(baseDir);
+	}
+
+	@Benchmark
+	public void obfuscate() throws MojoExecutionException, MojoFailureException {
+		ObfuscateMojo mojo = new ObfuscateMojo();
+		mojo.setLog(new SilentLog());
+		SyntheticFiles.setField(mojo, "project", project);
+		SyntheticFiles.setField(mojo, "threads", 1);
+		SyntheticFiles.setField(mojo, "staging", "copy");
+		mojo.execute();
+	}
+}
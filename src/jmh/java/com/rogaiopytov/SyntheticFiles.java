@@ -0,0 +1,105 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Генерация синтетических входных данных для бенчмарков. Содержимое зависит
+// только от количества файлов, поэтому результаты разных запусков сравнимы.
+final class SyntheticFiles {
+
+	private static final int CLASSES_PER_PACKAGE = 100;
+
+	private SyntheticFiles() {
+	}
+
+	// Проект в формате src/main/java + src/main/webapp, как его видит ObfuscateMojo:
+	// классы ссылаются друг на друга, а на каждые десять классов приходится
+	// один статический ресурс, который обфускация не меняет.
+	static void createProject(Path baseDir, int files) throws IOException {
+		Path javaDir = baseDir.resolve("src/main/java");
+		for (int i = 0; i < files; i++) {
+			String packageName = "bench.p" + (i / CLASSES_PER_PACKAGE);
+			Path file = javaDir.resolve(packageName.replace('.', '/')).resolve("Entity" + i + ".java");
+			Files.createDirectories(file.getParent());
+			Files.write(file, javaSource(packageName, i).getBytes(StandardCharsets.UTF_8));
+		}
+
+		Path webDir = baseDir.resolve("src/main/webapp");
+		Files.createDirectories(webDir.resolve("WEB-INF"));
+		Files.write(webDir.resolve("WEB-INF/web.xml"),
+				"<web-app><servlet-class>bench.p0.Entity0</servlet-class></web-app>\n".getBytes(StandardCharsets.UTF_8));
+		Random random = new Random(files);
+		for (int i = 0; i < files / 10; i++) {
+			Path asset = webDir.resolve("img/asset" + i + ".png");
+			Files.createDirectories(asset.getParent());
+			byte[] content = new byte[4096];
+			random.nextBytes(content);
+			Files.write(asset, content);
+		}
+		Files.write(baseDir.resolve("pom.xml"), "<project/>\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	static void createFiles(Path dir, int files, String extension, int size) throws IOException {
+		Files.createDirectories(dir);
+		Random random = new Random(files);
+		for (int i = 0; i < files; i++) {
+			byte[] content = new byte[size];
+			random.nextBytes(content);
+			Files.write(dir.resolve("file" + i + extension), content);
+		}
+	}
+
+	// Строки .properties вперемешку с кириллицей, как в типичных бандлах сообщений
+	static String[] propertyLines(int count) {
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			lines[i] = i % 3 == 0 ? "message.key" + i + "=Сообщение номер " + i : "message.key" + i + "=Message number " + i;
+		}
+		return lines;
+	}
+
+	static void deleteRecursively(Path root) throws IOException {
+		if (!Files.exists(root)) {
+			return;
+		}
+		try (Stream<Path> walk = Files.walk(root)) {
+			for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	// Параметры мойо заполняются Maven через поля, поэтому и здесь они
+	// выставляются через reflection.
+	static void setField(Object target, String name, Object value) {
+		try {
+			Field field = target.getClass().getDeclaredField(name);
+			field.setAccessible(true);
+			field.set(target, value);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot set field " + name, e);
+		}
+	}
+
+	private static String javaSource(String packageName, int index) {
+		String previous = "Entity" + Math.max(0, index - 1);
+		return "package " + packageName + ";\n\n"
+				+ "// Synthetic entity " + index + "\n"
+				+ "public class Entity" + index + " {\n"
+				+ "\tprivate static final String TABLE_NAME = \"entity_" + index + "\";\n"
+				+ "\tprivate long identifier" + index + " = " + index + "L;\n"
+				+ "\tprivate String displayName;\n"
+				+ "\tprivate " + (index == 0 ? "Object" : "bench.p" + ((index - 1) / CLASSES_PER_PACKAGE) + "." + previous) + " parent;\n\n"
+				+ "\tpublic long getIdentifier() {\n"
+				+ "\t\tlong result = identifier" + index + " * 31;\n"
+				+ "\t\treturn result + displayName.length();\n"
+				+ "\t}\n"
+				+ "}\n";
+	}
+}
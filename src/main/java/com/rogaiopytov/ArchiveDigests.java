@@ -0,0 +1,83 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Хеши записей архива, которые WarAssembler считает при упаковке. Лежат в
+// самом архиве записью META-INF/rik-digests.txt:
+// # rik digests v1 <АЛГОРИТМ> <АЛГОРИТМ> ...
+// <путь записи> \t <хеш> \t <хеш> ...
+public class ArchiveDigests {
+
+	public static final String ENTRY_NAME = "META-INF/rik-digests.txt";
+	private static final String HEADER = "# rik digests v1";
+
+	private final List<String> algorithms;
+	// Путь записи -> хеши в порядке algorithms
+	private final Map<String, String[]> digests = new TreeMap<>();
+
+	public ArchiveDigests(List<String> algorithms) {
+		this.algorithms = List.copyOf(algorithms);
+	}
+
+	public static ArchiveDigests read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String header = reader.readLine();
+		if (header == null || !header.startsWith(HEADER)) {
+			throw new IOException("Unknown archive digests format: " + header);
+		}
+		String algorithmList = header.substring(HEADER.length()).trim();
+		ArchiveDigests result = new ArchiveDigests(algorithmList.isEmpty() ? List.of() : Arrays.asList(algorithmList.split(" ")));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] parts = line.split("\t", -1);
+			if (parts.length != result.algorithms.size() + 1) {
+				throw new IOException("Malformed archive digests line: " + line);
+			}
+			result.digests.put(parts[0], Arrays.copyOfRange(parts, 1, parts.length));
+		}
+		return result;
+	}
+
+	// Поток не закрывается, чтобы его можно было дописывать в открытый архив.
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write(HEADER);
+		for (String algorithm : algorithms) {
+			writer.write(' ');
+			writer.write(algorithm);
+		}
+		writer.write('\n');
+		for (Map.Entry<String, String[]> entry : digests.entrySet()) {
+			writer.write(entry.getKey());
+			for (String digest : entry.getValue()) {
+				writer.write('\t');
+				writer.write(digest);
+			}
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	public void put(String path, String[] hexDigests) {
+		digests.put(path, hexDigests);
+	}
+
+	public List<String> getAlgorithms() {
+		return algorithms;
+	}
+
+	public Map<String, String[]> getDigests() {
+		return digests;
+	}
+}
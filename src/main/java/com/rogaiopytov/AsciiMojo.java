@@ -6,7 +6,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Objects;
@@ -57,8 +56,7 @@ public class AsciiMojo extends AbstractMojo {
 					String.format("%s: Input directory does not exist or is not a directory: %s", logPrefix, inputDir));
 		}
 		try {
-			Files.walk(Paths.get(inputDir)).filter(Files::isRegularFile).filter(path -> path.toString().endsWith(".properties"))
-					.forEach(this::processFile);
+			SourceIndex.get(getPluginContext(), Paths.get(inputDir)).findFiles("**/*.properties").forEach(this::processFile);
 		} catch (IOException e) {
 			throw new MojoExecutionException(String.format("%s: Error walking through input directory: %s", logPrefix, inputDir), e);
 		}
@@ -89,7 +87,7 @@ public class AsciiMojo extends AbstractMojo {
 		}
 	}
 
-	private String toAsciiEscaped(String input) {
+	String toAsciiEscaped(String input) {
 		if (Objects.isNull(input)) {
 			return "";
 		}
@@ -0,0 +1,303 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.codehaus.plexus.util.FileUtils;
+
+// Копирует webapp в промежуточный каталог и добавляет к именам статических
+// ресурсов хеш содержимого (app.js -> app.3f9a1c.js), чтобы сервер мог отдавать
+// их с долгим кешированием. Ссылки на ресурсы в .xhtml, .css, .js и других
+// текстовых файлах переписываются на новые имена. CSS и JS хешируются уже после
+// замены ссылок внутри них, поэтому изменение картинки меняет и имя
+// ссылающейся на неё таблицы стилей. Исходные имена тоже остаются в архиве:
+// ссылки, которые не удалось найти в тексте (например, собранные в JS), не ломаются.
+// Соответствие старых и новых путей пишется в WEB-INF/asset-manifest.json.
+// Ресурсы JSF (<h:outputScript library="js" name="app.js"/>,
+// #{resource['js:app.js']}) ищутся по паре library и name в каталоге resources.
+public class AssetFingerprinter {
+
+	public static final String MANIFEST_PATH = "WEB-INF/asset-manifest.json";
+	private static final int HASH_LENGTH = 6;
+
+	private static final Set<String> ASSET_EXTENSIONS = Set.of("css", "js", "png", "jpg", "jpeg", "gif", "svg", "webp", "avif",
+			"ico", "woff", "woff2", "ttf", "otf", "eot");
+	// Файлы, в которых ищутся ссылки на ресурсы
+	private static final Set<String> TEXT_EXTENSIONS = Set.of("css", "js", "svg", "xhtml", "html", "htm", "jsp", "jspx", "xml",
+			"json", "webmanifest");
+	// Пути, которые запрашиваются по фиксированному имени
+	private static final Set<String> FIXED_NAMES = Set.of("favicon.ico");
+	private static final Pattern REFERENCE = Pattern.compile("[A-Za-z0-9_./-]+");
+	private static final Pattern TAG = Pattern.compile("<[A-Za-z][^<>]*>");
+	private static final Pattern TAG_ATTRIBUTE = Pattern.compile("\\s(name|library)\\s*=\\s*([\"'])([^\"'<>]*)\\2");
+	private static final Pattern RESOURCE_EXPRESSION = Pattern.compile("resource\\[\\s*([\"'])(?:([^\"':]+):)?([^\"']+)\\1\\s*\\]");
+
+	private final FileHasher hasher;
+	private Path staging;
+	private Set<String> assets;
+	// Сколько ресурсов оканчивается на путь: a/b/c.js даёт c.js, b/c.js и a/b/c.js
+	private final Map<String, Integer> suffixCounts = new HashMap<>();
+	// Исходный путь ресурса -> путь с хешем, пути относительно webapp через '/'
+	private final Map<String, String> fingerprints = new TreeMap<>();
+	private final Set<String> visiting = new HashSet<>();
+	private int rewritten;
+
+	public AssetFingerprinter(String algorithm) throws NoSuchAlgorithmException {
+		this.hasher = new FileHasher(List.of(algorithm));
+	}
+
+	// Возвращает исходный путь -> путь с хешем. staging очищается.
+	public Map<String, String> process(Path webapp, Path staging) throws IOException {
+		this.staging = staging;
+		FileUtils.deleteDirectory(staging.toFile());
+		List<String> files;
+		try (Stream<Path> stream = Files.walk(webapp)) {
+			files = stream.filter(Files::isRegularFile)
+					.map(file -> webapp.relativize(file).toString().replace('\\', '/'))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+		for (String file : files) {
+			Path target = staging.resolve(file);
+			Files.createDirectories(target.getParent());
+			Files.copy(webapp.resolve(file), target, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+
+		assets = files.stream().filter(AssetFingerprinter::isAsset).collect(Collectors.toSet());
+		for (String asset : assets) {
+			suffixCounts.merge(asset, 1, Integer::sum);
+			for (int slash = asset.indexOf('/'); slash >= 0; slash = asset.indexOf('/', slash + 1)) {
+				suffixCounts.merge(asset.substring(slash + 1), 1, Integer::sum);
+			}
+		}
+		for (String file : files) {
+			if (assets.contains(file)) {
+				fingerprint(file);
+			} else if (TEXT_EXTENSIONS.contains(extension(file))) {
+				rewrite(file);
+			}
+		}
+		writeManifest(staging.resolve(MANIFEST_PATH));
+		return fingerprints;
+	}
+
+	// Количество файлов, в которых были заменены ссылки
+	public int getRewrittenFiles() {
+		return rewritten;
+	}
+
+	private void fingerprint(String asset) throws IOException {
+		if (fingerprints.containsKey(asset) || !visiting.add(asset)) {
+			// Циклические ссылки (a.css импортирует b.css и наоборот) остаются
+			// на исходные имена
+			return;
+		}
+		if (TEXT_EXTENSIONS.contains(extension(asset))) {
+			rewrite(asset);
+		}
+		String hash = hasher.hash(staging.resolve(asset)).values().iterator().next().substring(0, HASH_LENGTH);
+		String fingerprinted = fingerprintedName(asset, hash);
+		Files.copy(staging.resolve(asset), staging.resolve(fingerprinted), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.COPY_ATTRIBUTES);
+		fingerprints.put(asset, fingerprinted);
+		visiting.remove(asset);
+	}
+
+	// Текст читается как ISO-8859-1: ссылки ищутся только из ASCII-символов, а
+	// остальные байты (UTF-8 или любая другая кодировка) сохраняются как были.
+	private void rewrite(String file) throws IOException {
+		Path path = staging.resolve(file);
+		String text = new String(Files.readAllBytes(path), StandardCharsets.ISO_8859_1);
+		// Начало фрагмента -> замена; сначала ресурсы JSF, затем остальные ссылки
+		NavigableMap<Integer, Replacement> replacements = new TreeMap<>();
+		findJsfResources(file, text, replacements);
+		Matcher matcher = REFERENCE.matcher(text);
+		while (matcher.find()) {
+			if (overlaps(replacements, matcher.start(), matcher.end())) {
+				continue;
+			}
+			String reference = matcher.group();
+			String target = resolve(file, reference);
+			String fingerprinted = target == null || target.equals(file) ? null : fingerprintOf(target);
+			if (fingerprinted != null) {
+				replacements.put(matcher.start(), new Replacement(matcher.end(),
+						reference.substring(0, reference.lastIndexOf('/') + 1) + fingerprinted.substring(fingerprinted.lastIndexOf('/') + 1)));
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(text.length());
+		int last = 0;
+		for (Map.Entry<Integer, Replacement> replacement : replacements.entrySet()) {
+			if (replacement.getValue().text != null) {
+				sb.append(text, last, replacement.getKey()).append(replacement.getValue().text);
+				last = replacement.getValue().end;
+			}
+		}
+		if (last > 0) {
+			sb.append(text, last, text.length());
+			Files.write(path, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+			rewritten++;
+		}
+	}
+
+	// Пары library и name в тегах (h:outputScript, h:outputStylesheet,
+	// h:graphicImage) и #{resource['library:name']}: ресурс ищется только в
+	// resources/<library>/<name>. Значение name, которое не оказалось ресурсом
+	// JSF, остаётся как есть и не попадает в общий поиск ссылок.
+	private void findJsfResources(String file, String text, NavigableMap<Integer, Replacement> replacements) throws IOException {
+		Matcher tag = TAG.matcher(text);
+		Matcher attribute = TAG_ATTRIBUTE.matcher(text);
+		while (tag.find()) {
+			attribute.region(tag.start(), tag.end());
+			String library = null;
+			int nameStart = -1;
+			int nameEnd = -1;
+			while (attribute.find()) {
+				if ("library".equals(attribute.group(1))) {
+					library = attribute.group(3);
+				} else {
+					nameStart = attribute.start(3);
+					nameEnd = attribute.end(3);
+				}
+			}
+			if (nameStart >= 0) {
+				addJsfResource(file, library, text, nameStart, nameEnd, replacements);
+			}
+		}
+		Matcher expression = RESOURCE_EXPRESSION.matcher(text);
+		while (expression.find()) {
+			addJsfResource(file, expression.group(2), text, expression.start(3), expression.end(3), replacements);
+		}
+	}
+
+	private void addJsfResource(String file, String library, String text, int start, int end,
+			NavigableMap<Integer, Replacement> replacements) throws IOException {
+		if (overlaps(replacements, start, end)) {
+			return;
+		}
+		String prefix = library == null || library.isEmpty() ? "resources/" : "resources/" + library + "/";
+		String target = existing(normalize(prefix + text.substring(start, end)));
+		String fingerprinted = target == null || target.equals(file) || !target.startsWith(prefix) ? null : fingerprintOf(target);
+		replacements.put(start, new Replacement(end, fingerprinted == null ? null : fingerprinted.substring(prefix.length())));
+	}
+
+	// Путь с хешем, null - если ресурс остаётся под исходным именем (цикл ссылок)
+	private String fingerprintOf(String asset) throws IOException {
+		fingerprint(asset);
+		return fingerprints.get(asset);
+	}
+
+	// Ссылка ищется относительно файла, затем от корня webapp и в каталоге
+	// resources. Последние два варианта - только если на этот путь оканчивается
+	// ровно один ресурс: иначе неясно, на какой из них указывает ссылка.
+	private String resolve(String file, String reference) {
+		if (!ASSET_EXTENSIONS.contains(extension(reference))) {
+			return null;
+		}
+		if (reference.startsWith("/")) {
+			return existing(normalize(reference.substring(1)));
+		}
+		int slash = file.lastIndexOf('/');
+		String relative = existing(normalize(file.substring(0, slash + 1) + reference));
+		if (relative != null) {
+			return relative;
+		}
+		String normalized = normalize(reference);
+		if (normalized == null || suffixCounts.getOrDefault(normalized, 0) != 1) {
+			return null;
+		}
+		String root = existing(normalized);
+		return root != null ? root : existing(normalize("resources/" + reference));
+	}
+
+	private static boolean overlaps(NavigableMap<Integer, Replacement> replacements, int start, int end) {
+		Map.Entry<Integer, Replacement> before = replacements.floorEntry(start);
+		Integer after = replacements.ceilingKey(start);
+		return before != null && before.getValue().end > start || after != null && after < end;
+	}
+
+	private String existing(String path) {
+		return path != null && assets.contains(path) ? path : null;
+	}
+
+	private void writeManifest(Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("{\n");
+			int i = 0;
+			for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+				writer.write(String.format("  \"%s\": \"%s\"%s\n", escape(entry.getKey()), escape(entry.getValue()),
+						++i < fingerprints.size() ? "," : ""));
+			}
+			writer.write("}\n");
+		}
+	}
+
+	private static boolean isAsset(String file) {
+		return !file.startsWith("WEB-INF/") && !file.startsWith("META-INF/") && !FIXED_NAMES.contains(file)
+				&& ASSET_EXTENSIONS.contains(extension(file));
+	}
+
+	// app.min.js -> app.min.<hash>.js
+	private static String fingerprintedName(String file, String hash) {
+		int dot = file.lastIndexOf('.');
+		return file.substring(0, dot) + "." + hash + file.substring(dot);
+	}
+
+	private static String extension(String file) {
+		int dot = file.lastIndexOf('.');
+		return dot < 0 || dot < file.lastIndexOf('/') ? "" : file.substring(dot + 1).toLowerCase();
+	}
+
+	// Убирает "." и "..", null - если путь выходит за корень
+	private static String normalize(String path) {
+		Deque<String> segments = new ArrayDeque<>();
+		for (String segment : path.split("/")) {
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				if (segments.isEmpty()) {
+					return null;
+				}
+				segments.removeLast();
+			} else {
+				segments.addLast(segment);
+			}
+		}
+		return String.join("/", segments);
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private static final class Replacement {
+		private final int end;
+		// null - фрагмент остаётся без изменений
+		private final String text;
+
+		private Replacement(int end, String text) {
+			this.end = end;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.codehaus.plexus.util.FileUtils;
+
+// Локальный кеш результатов compile и build между сборками (по умолчанию
+// ~/.m2/rik-cache). Ключ - SHA-256 от содержимого входов (дерево исходников,
+// classpath, параметры цели, см. Key), значение - каталог <ключ> с копиями
+// выходов: файлов и деревьев каталогов под заданными именами. При попадании
+// выходы копируются на место, а время изменения каталога записи обновляется;
+// после сохранения новой записи самые давно использованные удаляются, пока
+// общий размер не станет меньше maxBytes.
+// Запись собирается во временном каталоге и переименовывается, поэтому другой
+// процесс никогда не видит её недописанной.
+public class BuildCache {
+
+	private static final String SIZE_FILE = ".size";
+	private static final String TEMP_PREFIX = ".tmp-";
+	// Брошенные временные каталоги (упавшая сборка) удаляются через час
+	private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+	// Хеш входов. Каждое значение пишется с длиной, так что разные наборы
+	// значений не дают один и тот же поток байтов.
+	public static final class Key {
+
+		private final HashStrategy hash;
+		private final byte[] buffer = new byte[64 * 1024];
+
+		public Key(String kind) {
+			try {
+				this.hash = HashStrategy.forAlgorithm("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				// SHA-256 обязан поддерживать любой JRE
+				throw new IllegalStateException(e);
+			}
+			add("kind", kind);
+		}
+
+		public Key add(String name, String value) {
+			update(name);
+			update(value == null ? "\u0000null" : value);
+			return this;
+		}
+
+		// Содержимое всех файлов дерева вместе с относительными путями
+		public Key addTree(String name, SourceIndex index) throws IOException {
+			update(name);
+			for (SourceIndex.Entry entry : index.getFiles()) {
+				update(entry.getPath());
+				update(Long.toString(entry.getSize()));
+				try (InputStream in = Files.newInputStream(entry.getFile())) {
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						hash.update(ByteBuffer.wrap(buffer, 0, read));
+					}
+				}
+			}
+			return this;
+		}
+
+		// Путь, размер и время изменения: для jar из репозитория этого достаточно,
+		// а SNAPSHOT-зависимость при обновлении меняет время изменения
+		public Key addFileStamp(String name, Path file) throws IOException {
+			update(name);
+			update(file.toAbsolutePath().toString());
+			if (Files.exists(file)) {
+				update(Long.toString(Files.size(file)));
+				update(Long.toString(Files.getLastModifiedTime(file).toMillis()));
+			}
+			return this;
+		}
+
+		public String build() {
+			return HexFormat.of().formatHex(hash.digest());
+		}
+
+		private void update(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			hash.update(ByteBuffer.allocate(4).putInt(bytes.length).flip());
+			hash.update(ByteBuffer.wrap(bytes));
+		}
+	}
+
+	private final Path directory;
+	private final long maxBytes;
+	private int evicted;
+
+	public BuildCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	public boolean restore(String key, Map<String, Path> outputs) throws IOException {
+		return restore(key, outputs, path -> true);
+	}
+
+	// outputs: имя в записи -> файл или каталог проекта. В каталоге проекта
+	// заменяются только файлы, подходящие под filter (путь относительно
+	// каталога), остальные не трогаются. false - записи нет.
+	public boolean restore(String key, Map<String, Path> outputs, Predicate<Path> filter) throws IOException {
+		Path entry = directory.resolve(key);
+		if (!Files.isDirectory(entry)) {
+			return false;
+		}
+		for (Map.Entry<String, Path> output : outputs.entrySet()) {
+			if (!Files.exists(entry.resolve(output.getKey()))) {
+				return false;
+			}
+		}
+		for (Map.Entry<String, Path> output : outputs.entrySet()) {
+			Path source = entry.resolve(output.getKey());
+			Path target = output.getValue();
+			if (Files.isDirectory(source)) {
+				deleteFiles(target, filter);
+				copyTree(source, target, filter);
+			} else {
+				Files.createDirectories(target.getParent());
+				Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		return true;
+	}
+
+	public void store(String key, Map<String, Path> outputs) throws IOException {
+		store(key, outputs, path -> true);
+	}
+
+	// Из каталогов сохраняются только файлы, подходящие под filter.
+	// Отсутствующие выходы не сохраняются. Если запись с этим ключом уже есть
+	// (её сохранил параллельный процесс), новая отбрасывается.
+	public void store(String key, Map<String, Path> outputs, Predicate<Path> filter) throws IOException {
+		Files.createDirectories(directory);
+		Path temp = directory.resolve(TEMP_PREFIX + UUID.randomUUID());
+		try {
+			Files.createDirectories(temp);
+			for (Map.Entry<String, Path> output : outputs.entrySet()) {
+				Path source = output.getValue();
+				if (Files.isDirectory(source)) {
+					copyTree(source, temp.resolve(output.getKey()), filter);
+				} else if (Files.isRegularFile(source)) {
+					Files.copy(source, temp.resolve(output.getKey()));
+				}
+			}
+			Files.writeString(temp.resolve(SIZE_FILE), Long.toString(size(temp)));
+			try {
+				Files.move(temp, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// Запись уже сохранена другим процессом
+			} catch (IOException e) {
+				// На некоторых ФС существующий непустой каталог даёт другую ошибку
+				if (!Files.isDirectory(directory.resolve(key))) {
+					throw e;
+				}
+			}
+		} finally {
+			if (Files.exists(temp)) {
+				FileUtils.deleteDirectory(temp.toFile());
+			}
+		}
+		evict();
+	}
+
+	// Записи, удалённые при последнем сохранении
+	public int getEvicted() {
+		return evicted;
+	}
+
+	private void evict() throws IOException {
+		evicted = 0;
+		List<Path> entries = new ArrayList<>();
+		long total = 0;
+		long now = System.currentTimeMillis();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path entry : stream) {
+				if (!Files.isDirectory(entry)) {
+					continue;
+				}
+				if (entry.getFileName().toString().startsWith(TEMP_PREFIX)) {
+					if (Files.getLastModifiedTime(entry).toMillis() < now - STALE_TEMP_MILLIS) {
+						FileUtils.deleteDirectory(entry.toFile());
+					}
+					continue;
+				}
+				entries.add(entry);
+				total += entrySize(entry);
+			}
+		}
+		entries.sort(Comparator.comparingLong(BuildCache::lastUsed));
+		for (Path entry : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			total -= entrySize(entry);
+			FileUtils.deleteDirectory(entry.toFile());
+			evicted++;
+		}
+	}
+
+	private static long entrySize(Path entry) throws IOException {
+		try {
+			return Long.parseLong(Files.readString(entry.resolve(SIZE_FILE)).trim());
+		} catch (NoSuchFileException | NumberFormatException e) {
+			return size(entry);
+		}
+	}
+
+	// Время последнего использования; удалённая другим процессом запись идёт первой
+	private static long lastUsed(Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry).toMillis();
+		} catch (IOException e) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	private static long size(Path root) throws IOException {
+		try (Stream<Path> stream = Files.walk(root)) {
+			return stream.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+		}
+	}
+
+	private static void copyTree(Path source, Path target, Predicate<Path> filter) throws IOException {
+		Files.createDirectories(target);
+		for (Path file : files(source, filter)) {
+			Path destination = target.resolve(source.relativize(file).toString());
+			Files.createDirectories(destination.getParent());
+			Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+		}
+	}
+
+	private static void deleteFiles(Path root, Predicate<Path> filter) throws IOException {
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+		for (Path file : files(root, filter)) {
+			Files.delete(file);
+		}
+	}
+
+	// Обычные файлы дерева, путь которых относительно root подходит под filter
+	private static List<Path> files(Path root, Predicate<Path> filter) throws IOException {
+		try (Stream<Path> stream = Files.walk(root)) {
+			return stream.filter(Files::isRegularFile).filter(path -> filter.test(root.relativize(path))).collect(Collectors.toList());
+		}
+	}
+}
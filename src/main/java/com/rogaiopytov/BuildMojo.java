@@ -12,9 +12,24 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
@@ -25,6 +40,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 import org.twdata.maven.mojoexecutor.MojoExecutor.Element;
 
 @Mojo(name = "build", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true, requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME)
@@ -48,26 +64,144 @@ public class BuildMojo extends AbstractMojo {
 	@Parameter
 	private List<ManifestEntry> manifestEntries;
 
+	// Не запускать цель compile, если классы уже подготовлены (например, obfuscate-bytecode)
+	@Parameter(property = "skipCompile", defaultValue = "false")
+	private boolean skipCompile;
+
+	// Каталог с классами для WEB-INF/classes, по умолчанию target/classes
+	@Parameter(property = "classesDirectory")
+	private String classesDirectory;
+
+	// maven - упаковка через maven-war-plugin; rik - собственная упаковка
+	// (WarAssembler) прямо из исходных каталогов с параллельным сжатием, которая
+	// при записи файлов сразу считает их хеши
+	@Parameter(property = "archiver", defaultValue = "maven")
+	private String archiver;
+
+	// Алгоритмы хешей записей для archiver=rik, пишутся в META-INF/rik-digests.txt
+	@Parameter
+	private List<String> digestAlgorithms;
+
+	// Воспроизводимая сборка, как project.build.outputTimestamp в Maven: секунды
+	// эпохи или ISO-8601. Все записи получают это время, атрибуты манифеста
+	// сортируются, и одинаковые входы дают побайтно одинаковый архив.
+	@Parameter(property = "outputTimestamp", defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
+	// Добавлять к именам CSS, JS, картинок и шрифтов из src/main/webapp хеш
+	// содержимого (AssetFingerprinter) для долгого кеширования на клиенте
+	@Parameter(property = "fingerprintAssets", defaultValue = "false")
+	private boolean fingerprintAssets;
+
+	@Parameter(property = "fingerprintAlgorithm", defaultValue = "MD5")
+	private String fingerprintAlgorithm;
+
+	// Добавлять в архив .gz-варианты статических файлов webapp и javadoc
+	@Parameter(property = "precompress", defaultValue = "false")
+	private boolean precompress;
+
+	// Для archiver=rik: записи неизменившихся файлов копируются из прежнего
+	// архива без повторного сжатия (индекс в target/rik-war-index.txt)
+	@Parameter(property = "incrementalWar", defaultValue = "false")
+	private boolean incrementalWar;
+
+	// Локальный кеш результатов (BuildCache): при тех же исходниках, classpath,
+	// javadoc и параметрах упаковки WAR берётся из кеша без компиляции
+	@Parameter(property = "buildCache", defaultValue = "false")
+	private boolean buildCache;
+
+	@Parameter(property = "buildCacheDir", defaultValue = "${user.home}/.m2/rik-cache")
+	private File buildCacheDir;
+
+	// Предельный размер кеша в мегабайтах
+	@Parameter(property = "buildCacheSize", defaultValue = "2048")
+	private long buildCacheSize;
+
+	// Количество потоков для предварительного сжатия и упаковки archiver=rik
+	@Parameter(property = "threads", defaultValue = "1")
+	private int threads;
+
 	private final String logPrefix = "Build Goal";
 
 
 	@Override
     public void execute() throws MojoExecutionException {
+		if (!"maven".equals(archiver) && !"rik".equals(archiver)) {
+			throw new MojoExecutionException(String.format("%s: Unknown archiver '%s', expected 'maven' or 'rik'", logPrefix, archiver));
+		}
+		if (incrementalWar && "maven".equals(archiver)) {
+			getLog().warn(String.format("%s: incrementalWar is only supported with archiver=rik, packing the whole archive", logPrefix));
+		}
+		Instant timestamp = parseOutputTimestamp(outputTimestamp);
+		if (timestamp != null && manifestEntries != null) {
+			manifestEntries = new ArrayList<>(manifestEntries);
+			manifestEntries.sort(Comparator.comparing(ManifestEntry::getName));
+		}
 		this.src = String.format("%s/%s", this.project.getBasedir().toString(), this.src);
         getLog().info(String.format("%s: Using src directory: %s", logPrefix, src));
 
-        executeMojo(
-            plugin(
-                groupId("com.RogaIKopytov"),
-                artifactId("rik-maven-plugin"),
-                version("1.0")
-            ),
-            goal("compile"),
-            configuration(
-                element("src", src)
-            ),
-            executionEnvironment(project, session, pluginManager)
-        );
+		if (finalName == null || finalName.isEmpty()) {
+			finalName = project.getBuild().getFinalName();
+		}
+		project.getBuild().setFinalName(finalName);
+		File war = new File(project.getBuild().getDirectory(), finalName + ".war");
+		File classes = new File(classesDirectory != null && !classesDirectory.isEmpty() ? classesDirectory
+				: project.getBuild().getOutputDirectory());
+		File apidocsDir = new File(project.getBuild().getDirectory(), "reports/apidocs");
+
+		// WAR ищется в кеше до компиляции: ключ строится по тем же входам, что и
+		// у rik:compile, а не по скомпилированным классам
+		BuildCache cache = null;
+		String cacheKey = null;
+		String compileInputs = null;
+		if (buildCache) {
+			cache = new BuildCache(buildCacheDir.toPath(), buildCacheSize * 1024 * 1024);
+			try {
+				File javaDir = new File(this.src, "main/java");
+				if (!skipCompile && javaDir.isDirectory()) {
+					compileInputs = CompileMojo.compileInputs(project, getPluginContext(), javaDir);
+				}
+				cacheKey = cacheKey(compileInputs, classes, apidocsDir);
+				long started = System.nanoTime();
+				if (cache.restore(cacheKey, Map.of("war", war.toPath()))) {
+					project.getArtifact().setFile(war);
+					getLog().info(String.format("%s: Build cache hit %s, restored %s in %d ms", logPrefix, cacheKey.substring(0, 12),
+							war.getAbsolutePath(), (System.nanoTime() - started) / 1_000_000));
+					// Классы нужны и следующим целям (rik:test), поэтому компиляция
+					// запускается, только если target/classes собраны не из этих входов
+					if (!skipCompile && (compileInputs == null || !CompileMojo.isCompiledFrom(project, compileInputs))) {
+						compile();
+					}
+					return;
+				}
+				getLog().info(String.format("%s: Build cache miss %s", logPrefix, cacheKey.substring(0, 12)));
+			} catch (IOException e) {
+				getLog().warn(String.format("%s: Build cache is unavailable, packaging: %s", logPrefix, e.getMessage()));
+				cache = null;
+			} catch (DependencyResolutionRequiredException e) {
+				throw new MojoExecutionException(String.format("%s: Compile classpath is not resolved", logPrefix), e);
+			}
+		}
+
+		if (!skipCompile) {
+			compile();
+		}
+
+		File webappDir = new File(this.src, "main/webapp");
+		if (fingerprintAssets && webappDir.isDirectory()) {
+			webappDir = fingerprintAssets(webappDir);
+		}
+
+		File precompressedDir = new File(project.getBuild().getDirectory(), "precompressed");
+		if (precompress) {
+			precompress(webappDir, apidocsDir, precompressedDir);
+		}
+
+		if ("rik".equals(archiver)) {
+			assembleWar(war, classes, webappDir, apidocsDir, precompress ? precompressedDir : null, timestamp);
+			storeInCache(cache, cacheKey, war);
+			return;
+		}
 
 		Element manifestConfig = null;
 		if (manifestEntries != null && !manifestEntries.isEmpty()) {
@@ -84,21 +218,34 @@ public class BuildMojo extends AbstractMojo {
 		}
 
 		List<Element> configElements = new ArrayList<>();
-		configElements.add(element("warSourceDirectory", String.format("%s/main/webapp", this.src)));
+		configElements.add(element("warSourceDirectory", webappDir.getAbsolutePath()));
 		if (archiveConfig != null) {
 			configElements.add(archiveConfig);
 		}
+		if (classesDirectory != null && !classesDirectory.isEmpty()) {
+			configElements.add(element("classesDirectory", classesDirectory));
+		}
+		if (timestamp != null) {
+			configElements.add(element("outputTimestamp", outputTimestamp));
+		}
 
 		List<Element> webResources = new ArrayList<Element>();
 		
-		String buildDir = project.getBuild().getDirectory();
-		File apidocsDir = new File(buildDir, "reports/apidocs");
 		if (apidocsDir.exists() && apidocsDir.isDirectory()) {
 			webResources.add(
 					element(name("resource"), 
 							element(name("directory"), apidocsDir.getAbsolutePath()),
 							element(name("targetPath"), "javadoc")));
 		}
+		if (precompress) {
+			webResources.add(
+					element(name("resource"),
+							element(name("directory"), new File(precompressedDir, "webapp").getAbsolutePath())));
+			webResources.add(
+					element(name("resource"),
+							element(name("directory"), new File(precompressedDir, "javadoc").getAbsolutePath()),
+							element(name("targetPath"), "javadoc")));
+		}
 		
 		File localizationDir = new File(this.src, "main/resources");
         webResources.add(
@@ -114,11 +261,6 @@ public class BuildMojo extends AbstractMojo {
 		Element webResourcesElement = element(name("webResources"), webResources.toArray(new Element[0]));
 		configElements.add(webResourcesElement);
 
-		if (finalName == null || finalName.isEmpty()) {
-			finalName = project.getBuild().getFinalName();
-		}
-		project.getBuild().setFinalName(finalName);
-
         executeMojo(
             plugin(
                 groupId("org.apache.maven.plugins"),
@@ -129,5 +271,250 @@ public class BuildMojo extends AbstractMojo {
 				configuration(configElements.toArray(new Element[0])),
             executionEnvironment(project, session, pluginManager)
         );
+		storeInCache(cache, cacheKey, war);
     }
+
+	// Тот же состав архива, что и у maven-war-plugin в execute(): веб-ресурсы,
+	// src/main/webapp, классы и runtime-зависимости в WEB-INF/lib.
+	private void assembleWar(File war, File classes, File webappDir, File apidocsDir, File precompressedDir, Instant timestamp)
+			throws MojoExecutionException {
+		List<String> algorithms = digestAlgorithms != null ? digestAlgorithms : Collections.emptyList();
+
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Created-By", "rik-maven-plugin");
+		attributes.putValue("Build-Jdk-Spec", System.getProperty("java.specification.version"));
+		if (manifestEntries != null) {
+			for (ManifestEntry me : manifestEntries) {
+				attributes.putValue(me.getName(), me.getValue());
+			}
+		}
+
+		long started = System.nanoTime();
+		// Прежний архив переименовывается, чтобы читать из него записи, пока на
+		// его место пишется новый
+		File previousWar = null;
+		if (incrementalWar && war.isFile()) {
+			previousWar = new File(war.getPath() + ".previous");
+			try {
+				Files.move(war.toPath(), previousWar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				throw new MojoExecutionException(String.format("%s: Could not move previous archive %s", logPrefix, war.getAbsolutePath()), e);
+			}
+		}
+		File index = new File(project.getBuild().getDirectory(), "rik-war-index.txt");
+		int files;
+		long bytes;
+		int reused = 0;
+		String fullReason = null;
+		boolean packed = false;
+		try {
+			try (ParallelExecutor executor = new ParallelExecutor(threads);
+					WarAssembler assembler = new WarAssembler(war, manifest, algorithms, timestamp, executor)) {
+				if (incrementalWar) {
+					fullReason = assembler.reuse(previousWar != null ? previousWar.toPath() : null, index.toPath());
+				}
+				assembler.addTree(apidocsDir, "javadoc/", path -> true);
+				if (precompressedDir != null) {
+					assembler.addTree(new File(precompressedDir, "javadoc"), "javadoc/", path -> true);
+				}
+				assembler.addTree(new File(this.src, "main/resources"), "WEB-INF/classes/",
+						path -> path.getFileName().toString().endsWith(".properties"));
+				assembler.addTree(webappDir, "", path -> true);
+				if (precompressedDir != null) {
+					assembler.addTree(new File(precompressedDir, "webapp"), "", path -> true);
+				}
+				assembler.addTree(classes, "WEB-INF/classes/", path -> true);
+				for (Artifact artifact : project.getArtifacts()) {
+					if (artifact.getFile() != null && artifact.getArtifactHandler().isAddedToClasspath()
+							&& (Artifact.SCOPE_COMPILE.equals(artifact.getScope()) || Artifact.SCOPE_RUNTIME.equals(artifact.getScope()))) {
+						assembler.addFile(artifact.getFile().toPath(), "WEB-INF/lib/" + artifact.getFile().getName());
+					}
+				}
+				files = assembler.getFileCount();
+				bytes = assembler.getBytes();
+				reused = assembler.getReusedCount();
+			}
+			// Архив дописывается при закрытии WarAssembler, поэтому успех - только после него
+			packed = true;
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException(String.format("%s: Unsupported hash algorithm in %s", logPrefix, algorithms), e);
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error writing WAR archive: %s", logPrefix, war.getAbsolutePath()), e);
+		} finally {
+			if (previousWar != null) {
+				if (packed) {
+					if (!previousWar.delete()) {
+						getLog().warn(String.format("%s: Could not delete %s", logPrefix, previousWar.getAbsolutePath()));
+					}
+				} else {
+					restorePreviousWar(previousWar, war, index);
+				}
+			}
+		}
+
+		project.getArtifact().setFile(war);
+		getLog().info(String.format("%s: Packed %d files (%d KB -> %d KB) into %s with %d threads in %d ms%s", logPrefix, files,
+				bytes / 1024, war.length() / 1024, war.getAbsolutePath(), threads, (System.nanoTime() - started) / 1_000_000,
+				algorithms.isEmpty() ? "" : ", " + algorithms + " digests in " + ArchiveDigests.ENTRY_NAME));
+		if (incrementalWar) {
+			getLog().info(fullReason == null
+					? String.format("%s: Reused %d of %d entries from the previous archive, %d recompressed", logPrefix, reused, files,
+							files - reused)
+					: String.format("%s: Full repack (%s)", logPrefix, fullReason));
+		}
+	}
+
+	// Упаковка не удалась: на место недописанного архива возвращается прежний, а
+	// индекс, описывающий недописанный, удаляется - следующая сборка будет полной
+	private void restorePreviousWar(File previousWar, File war, File index) {
+		try {
+			Files.move(previousWar.toPath(), war.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(index.toPath());
+			getLog().warn(String.format("%s: Packing failed, restored the previous archive %s", logPrefix, war.getAbsolutePath()));
+		} catch (IOException e) {
+			getLog().error(String.format("%s: Could not restore the previous archive from %s", logPrefix, previousWar.getAbsolutePath()), e);
+		}
+	}
+
+	// Параметры передаются явно: вложенная цель не видит конфигурацию build
+	private void compile() throws MojoExecutionException {
+        executeMojo(
+            plugin(
+                groupId("com.RogaIKopytov"),
+                artifactId("rik-maven-plugin"),
+                version("1.0")
+            ),
+            goal("compile"),
+            configuration(
+                element("src", src),
+                element("buildCache", String.valueOf(buildCache)),
+                element("buildCacheDir", buildCacheDir.getAbsolutePath()),
+                element("buildCacheSize", String.valueOf(buildCacheSize))
+            ),
+            executionEnvironment(project, session, pluginManager)
+        );
+	}
+
+	// Всё, что попадает в архив: входы компиляции (или сами классы, если они
+	// собраны заранее), остальное содержимое src/main, javadoc, зависимости из
+	// WEB-INF/lib - и параметры, которые меняют его содержимое
+	private String cacheKey(String compileInputs, File classes, File apidocsDir) throws IOException {
+		BuildCache.Key key = new BuildCache.Key("build");
+		key.add("plugin", "rik-maven-plugin:1.0")
+				.add("finalName", finalName)
+				.add("archiver", archiver)
+				.add("digestAlgorithms", digestAlgorithms != null ? String.join(",", digestAlgorithms) : null)
+				.add("outputTimestamp", outputTimestamp)
+				.add("fingerprintAssets", fingerprintAssets ? fingerprintAlgorithm : null)
+				.add("precompress", String.valueOf(precompress));
+		if (manifestEntries != null) {
+			for (ManifestEntry me : manifestEntries) {
+				key.add("manifest " + me.getName(), me.getValue());
+			}
+		}
+		if (compileInputs != null) {
+			key.add("compile", compileInputs);
+		} else if (classes.isDirectory()) {
+			key.addTree("classes", SourceIndex.get(getPluginContext(), classes.toPath()));
+		}
+		File[] mainDirectories = new File(this.src, "main").listFiles(File::isDirectory);
+		if (mainDirectories != null) {
+			Arrays.sort(mainDirectories);
+			for (File directory : mainDirectories) {
+				// main/java уже учтён во входах компиляции
+				if (compileInputs == null || !"java".equals(directory.getName())) {
+					key.addTree("main/" + directory.getName(), SourceIndex.get(getPluginContext(), directory.toPath()));
+				}
+			}
+		}
+		if (apidocsDir.isDirectory()) {
+			key.addTree("apidocs", SourceIndex.get(getPluginContext(), apidocsDir.toPath()));
+		}
+		for (Artifact artifact : project.getArtifacts()) {
+			if (artifact.getFile() != null) {
+				key.addFileStamp(artifact.getScope(), artifact.getFile().toPath());
+			}
+		}
+		return key.build();
+	}
+
+	// Ошибка кеша не должна ломать сборку, поэтому только предупреждение
+	private void storeInCache(BuildCache cache, String cacheKey, File war) {
+		if (cache == null || !war.isFile()) {
+			return;
+		}
+		try {
+			cache.store(cacheKey, Map.of("war", war.toPath()));
+			getLog().info(String.format("%s: Stored %s in build cache %s%s", logPrefix, war.getName(), buildCacheDir.getAbsolutePath(),
+					cache.getEvicted() > 0 ? ", evicted " + cache.getEvicted() + " least recently used entries" : ""));
+		} catch (IOException e) {
+			getLog().warn(String.format("%s: Could not store %s in build cache: %s", logPrefix, war.getName(), e.getMessage()));
+		}
+	}
+
+	// .gz-файлы пишутся в target/precompressed/webapp и target/precompressed/javadoc
+	// и добавляются в архив поверх соответствующих каталогов
+	private void precompress(File webappDir, File apidocsDir, File precompressedDir) throws MojoExecutionException {
+		long started = System.nanoTime();
+		try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+			FileUtils.deleteDirectory(precompressedDir);
+			Precompressor precompressor = new Precompressor(executor);
+			precompressor.compressTree(webappDir.toPath(), new File(precompressedDir, "webapp").toPath());
+			precompressor.compressTree(apidocsDir.toPath(), new File(precompressedDir, "javadoc").toPath());
+			long saved = precompressor.getOriginalBytes() - precompressor.getCompressedBytes();
+			getLog().info(String.format("%s: Precompressed %d files (%d KB -> %d KB, %d KB saved per full download), skipped %d in %d ms",
+					logPrefix, precompressor.getCompressed(), precompressor.getOriginalBytes() / 1024,
+					precompressor.getCompressedBytes() / 1024, saved / 1024, precompressor.getSkipped(),
+					(System.nanoTime() - started) / 1_000_000));
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error precompressing static resources into %s", logPrefix,
+					precompressedDir.getAbsolutePath()), e);
+		}
+	}
+
+	// Возвращает каталог target/fingerprinted-webapp, который упаковывается вместо src/main/webapp
+	private File fingerprintAssets(File webappDir) throws MojoExecutionException {
+		File staging = new File(project.getBuild().getDirectory(), "fingerprinted-webapp");
+		long started = System.nanoTime();
+		try {
+			AssetFingerprinter fingerprinter = new AssetFingerprinter(fingerprintAlgorithm);
+			Map<String, String> fingerprints = fingerprinter.process(webappDir.toPath(), staging.toPath());
+			getLog().info(String.format("%s: Fingerprinted %d assets, rewrote references in %d files in %d ms, see %s", logPrefix,
+					fingerprints.size(), fingerprinter.getRewrittenFiles(), (System.nanoTime() - started) / 1_000_000,
+					AssetFingerprinter.MANIFEST_PATH));
+			for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+				getLog().debug(String.format("%s:   %s -> %s", logPrefix, entry.getKey(), entry.getValue()));
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException(String.format("%s: Unsupported fingerprint algorithm: %s", logPrefix, fingerprintAlgorithm), e);
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error fingerprinting assets into %s", logPrefix,
+					staging.getAbsolutePath()), e);
+		}
+		return staging;
+	}
+
+	// Правила те же, что у maven-archiver: пустое значение или один символ
+	// отключают режим, иначе секунды эпохи или дата ISO-8601 со смещением.
+	private Instant parseOutputTimestamp(String value) throws MojoExecutionException {
+		if (value == null || value.length() < 2) {
+			return null;
+		}
+		Instant timestamp;
+		try {
+			timestamp = value.chars().allMatch(Character::isDigit) ? Instant.ofEpochSecond(Long.parseLong(value))
+					: OffsetDateTime.parse(value).toInstant();
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new MojoExecutionException(String.format("%s: Invalid outputTimestamp '%s', expected epoch seconds or ISO-8601",
+					logPrefix, value), e);
+		}
+		// Диапазон DOS-времени в zip
+		if (timestamp.isBefore(Instant.parse("1980-01-01T00:00:02Z")) || timestamp.isAfter(Instant.parse("2099-12-31T23:59:59Z"))) {
+			throw new MojoExecutionException(String.format("%s: outputTimestamp '%s' is outside the zip date range 1980-2099",
+					logPrefix, value));
+		}
+		return timestamp;
+	}
 }
@@ -0,0 +1,374 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.AnnotationRemapper;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.FieldRemapper;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+// Обфускация уже скомпилированных классов: переименование классов, полей и
+// приватных методов одним проходом ClassRemapper по каждому .class файлу.
+// Пакеты не меняются. Методы с модификатором доступа шире private не
+// переименовываются, так как они могут переопределять методы библиотек или
+// вызываться из EL-выражений по имени.
+// Явные имена бинов (@Named("userBean"), @ManagedBean(name = "userBean"))
+// переименовываются так же, как ссылки на них в .xhtml, а имена полей и
+// методов библиотечных суперклассов и интерфейсов не выдаются членам проекта.
+public class BytecodeObfuscator {
+
+	// Вызываются сериализацией через reflection, поэтому их имена трогать нельзя
+	private static final Set<String> SERIALIZATION_METHODS = Set.of("writeObject", "readObject", "readObjectNoData", "writeReplace",
+			"readResolve");
+
+	// Аннотации, задающие имя бина для EL
+	private static final Set<String> BEAN_NAME_ANNOTATIONS = Set.of("Ljavax/inject/Named;", "Ljakarta/inject/Named;",
+			"Ljavax/faces/bean/ManagedBean;", "Ljakarta/faces/bean/ManagedBean;");
+
+	private final Map<String, ClassNode> classes = new TreeMap<>();
+	private final Map<String, Path> classFiles = new HashMap<>();
+
+	// Внутренние имена классов: package/Class -> package/Obfuscated
+	private final Map<String, String> classMapping = new HashMap<>();
+	// Простые имена классов: Class -> Obfuscated, общие для всех пакетов
+	private final Map<String, String> simpleClassMapping = new TreeMap<>();
+	// Те же имена без учёта регистра: так их заменяет IdentifierReplacer в .xhtml
+	private final Map<String, String> beanNameMapping = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+	// owner.field -> obfuscated
+	private final Map<String, String> fieldMapping = new HashMap<>();
+	// owner.method(desc) -> obfuscated
+	private final Map<String, String> methodMapping = new HashMap<>();
+
+	private final Map<String, String> fieldOwnerCache = new ConcurrentHashMap<>();
+	// Библиотечные классы, которых нет в classpath: их члены не зарезервированы
+	private final Set<String> unresolvedLibraryClasses = new TreeSet<>();
+	private final Remapper remapper = new MappingRemapper();
+	private final long seed;
+
+	public BytecodeObfuscator(long seed) {
+		this.seed = seed;
+	}
+
+	public void load(Path classesDir) throws IOException {
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(classesDir)) {
+			paths = walk.filter(Files::isRegularFile).filter(path -> path.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+		}
+		for (Path path : paths) {
+			ClassNode node = new ClassNode();
+			new ClassReader(Files.readAllBytes(path)).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+			if ("module-info".equals(node.name)) {
+				continue;
+			}
+			classes.put(node.name, node);
+			classFiles.put(node.name, path);
+		}
+	}
+
+	// libraries - загрузчик classpath проекта без его собственных классов,
+	// по нему читаются библиотечные суперклассы и интерфейсы
+	public void buildMappings(ClassLoader libraries) throws IOException {
+		Set<String> usedClassNames = new HashSet<>();
+		Set<String> usedMemberNames = new HashSet<>();
+		for (ClassNode node : classes.values()) {
+			Collections.addAll(usedClassNames, simpleName(node.name).split("\\$"));
+			for (FieldNode field : node.fields) {
+				usedMemberNames.add(field.name);
+			}
+			for (MethodNode method : node.methods) {
+				usedMemberNames.add(method.name);
+			}
+		}
+		reserveLibraryMembers(libraries, usedMemberNames);
+
+		NameAllocator classNames = new NameAllocator(seed);
+		usedClassNames.forEach(classNames::reserve);
+		for (String name : classes.keySet()) {
+			String simpleName = simpleName(name);
+			if ("package-info".equals(simpleName)) {
+				continue;
+			}
+			// Вложенные классы сохраняют структуру Outer$Inner, анонимные - свои номера
+			String[] segments = simpleName.split("\\$", -1);
+			for (int i = 0; i < segments.length; i++) {
+				String segment = segments[i];
+				if (!segment.isEmpty() && !Character.isDigit(segment.charAt(0))) {
+					segments[i] = simpleClassMapping.computeIfAbsent(segment, key -> capitalize(classNames.next()));
+				}
+			}
+			classMapping.put(name, name.substring(0, name.length() - simpleName.length()) + String.join("$", segments));
+		}
+		beanNameMapping.putAll(simpleClassMapping);
+
+		// Имена полей и методов уникальны во всём проекте: так переименованное поле
+		// подкласса никогда не перекроет переименованное поле суперкласса, а
+		// getfield Sub.a не найдёт новое поле вместо унаследованного из библиотеки.
+		NameAllocator memberNames = new NameAllocator(seed);
+		usedMemberNames.forEach(memberNames::reserve);
+		for (ClassNode node : classes.values()) {
+			for (FieldNode field : node.fields) {
+				boolean enumConstant = (field.access & Opcodes.ACC_ENUM) != 0;
+				if (!enumConstant && !"serialVersionUID".equals(field.name) && !"serialPersistentFields".equals(field.name)) {
+					fieldMapping.put(node.name + "." + field.name, memberNames.next());
+				}
+			}
+			for (MethodNode method : node.methods) {
+				boolean isPrivate = (method.access & Opcodes.ACC_PRIVATE) != 0;
+				if (isPrivate && !method.name.startsWith("<") && !SERIALIZATION_METHODS.contains(method.name)) {
+					methodMapping.put(node.name + "." + method.name + method.desc, memberNames.next());
+				}
+			}
+		}
+	}
+
+	// Переписывает классы в outputDir под новыми именами.
+	public void write(Path outputDir, ParallelExecutor executor) throws IOException {
+		List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+		executor.forEach(classes.keySet(), name -> {
+			try {
+				ClassReader reader = new ClassReader(Files.readAllBytes(classFiles.get(name)));
+				ClassWriter writer = new ClassWriter(0);
+				reader.accept(new BeanNameRemapper(writer), 0);
+				Path target = outputDir.resolve(remapper.map(name) + ".class");
+				Files.createDirectories(target.getParent());
+				Files.write(target, writer.toByteArray());
+			} catch (IOException e) {
+				errors.add(e);
+			}
+		});
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+	}
+
+	public Set<String> getUnresolvedLibraryClasses() {
+		return unresolvedLibraryClasses;
+	}
+
+	public Map<String, String> getSimpleClassMapping() {
+		return simpleClassMapping;
+	}
+
+	// Маппинги в виде полных имён через точку, как в mappings.txt исходной обфускации.
+	public Map<String, String> getMappings() {
+		Map<String, String> mappings = new TreeMap<>();
+		classMapping.forEach((from, to) -> mappings.put(from.replace('/', '.'), to.replace('/', '.')));
+		fieldMapping.forEach((from, to) -> mappings.put(from.replace('/', '.'), to));
+		methodMapping.forEach((from, to) -> {
+			int descriptorStart = from.indexOf('(');
+			mappings.put(from.substring(0, descriptorStart).replace('/', '.') + from.substring(descriptorStart), to);
+		});
+		return mappings;
+	}
+
+	// Обфусцированное имя -> исходное, для индекса rik:retrace. Имена классов и
+	// членов выдаются разными аллокаторами, но классы всегда с большой буквы, а
+	// члены - с маленькой, так что ключи не пересекаются.
+	public Map<String, String> getRetraceNames() {
+		Map<String, String> names = new TreeMap<>();
+		simpleClassMapping.forEach((from, to) -> names.put(to, from));
+		fieldMapping.forEach((from, to) -> names.put(to, from.substring(from.lastIndexOf('.') + 1)));
+		methodMapping.forEach((from, to) -> {
+			String name = from.substring(0, from.indexOf('('));
+			names.put(to, name.substring(name.lastIndexOf('.') + 1));
+		});
+		return names;
+	}
+
+	public Set<String> getPackages() {
+		Set<String> packages = new HashSet<>();
+		for (String name : classes.keySet()) {
+			int slash = name.lastIndexOf('/');
+			if (slash > 0) {
+				packages.add(name.substring(0, slash).replace('/', '.'));
+			}
+		}
+		return packages;
+	}
+
+	public int getClassCount() {
+		return classes.size();
+	}
+
+	private static String capitalize(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private static String simpleName(String internalName) {
+		return internalName.substring(internalName.lastIndexOf('/') + 1);
+	}
+
+	// Все имена полей и методов библиотечных суперклассов и интерфейсов
+	// (вместе с их собственными суперклассами и интерфейсами) проектных классов
+	private void reserveLibraryMembers(ClassLoader libraries, Set<String> usedMemberNames) throws IOException {
+		Set<String> visited = new HashSet<>();
+		List<String> pending = new ArrayList<>();
+		for (ClassNode node : classes.values()) {
+			if (node.superName != null) {
+				pending.add(node.superName);
+			}
+			pending.addAll(node.interfaces);
+		}
+		while (!pending.isEmpty()) {
+			String name = pending.remove(pending.size() - 1);
+			if (classes.containsKey(name) || !visited.add(name)) {
+				continue;
+			}
+			ClassNode node = new ClassNode();
+			try (InputStream in = libraries.getResourceAsStream(name + ".class")) {
+				if (in == null) {
+					unresolvedLibraryClasses.add(name.replace('/', '.'));
+					continue;
+				}
+				new ClassReader(in).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+			}
+			for (FieldNode field : node.fields) {
+				usedMemberNames.add(field.name);
+			}
+			for (MethodNode method : node.methods) {
+				usedMemberNames.add(method.name);
+			}
+			if (node.superName != null) {
+				pending.add(node.superName);
+			}
+			pending.addAll(node.interfaces);
+		}
+	}
+
+	// Имя бина, совпадающее с простым именем переименованного класса без учёта
+	// регистра, получает новое имя с тем же регистром, что и в .xhtml
+	private String mapBeanName(String name) {
+		String mapped = beanNameMapping.get(name);
+		return mapped == null ? name : IdentifierReplacer.adjustCase(mapped, name);
+	}
+
+	// Поле ищется так же, как это делает JVM: сам класс, его интерфейсы, затем суперкласс.
+	private String findFieldOwner(String owner, String name) {
+		ClassNode node = classes.get(owner);
+		if (node == null) {
+			return null;
+		}
+		for (FieldNode field : node.fields) {
+			if (field.name.equals(name)) {
+				return owner;
+			}
+		}
+		for (String itf : node.interfaces) {
+			String found = findFieldOwner(itf, name);
+			if (found != null) {
+				return found;
+			}
+		}
+		return node.superName == null ? null : findFieldOwner(node.superName, name);
+	}
+
+	// ClassRemapper, который дополнительно переименовывает строковые значения
+	// аннотаций имени бина на классах, полях и методах (producer-ы)
+	private class BeanNameRemapper extends ClassRemapper {
+
+		BeanNameRemapper(ClassVisitor classVisitor) {
+			super(Opcodes.ASM9, classVisitor, BytecodeObfuscator.this.remapper);
+		}
+
+		@Override
+		protected AnnotationVisitor createAnnotationRemapper(String descriptor, AnnotationVisitor annotationVisitor) {
+			return BEAN_NAME_ANNOTATIONS.contains(descriptor) ? new BeanNameAnnotationRemapper(descriptor, annotationVisitor)
+					: super.createAnnotationRemapper(descriptor, annotationVisitor);
+		}
+
+		@Override
+		protected FieldVisitor createFieldRemapper(FieldVisitor fieldVisitor) {
+			return new FieldRemapper(Opcodes.ASM9, fieldVisitor, remapper) {
+				@Override
+				protected AnnotationVisitor createAnnotationRemapper(String descriptor, AnnotationVisitor annotationVisitor) {
+					return BEAN_NAME_ANNOTATIONS.contains(descriptor) ? new BeanNameAnnotationRemapper(descriptor, annotationVisitor)
+							: super.createAnnotationRemapper(descriptor, annotationVisitor);
+				}
+			};
+		}
+
+		@Override
+		protected MethodVisitor createMethodRemapper(MethodVisitor methodVisitor) {
+			return new MethodRemapper(Opcodes.ASM9, methodVisitor, remapper) {
+				@Override
+				protected AnnotationVisitor createAnnotationRemapper(String descriptor, AnnotationVisitor annotationVisitor) {
+					return BEAN_NAME_ANNOTATIONS.contains(descriptor) ? new BeanNameAnnotationRemapper(descriptor, annotationVisitor)
+							: super.createAnnotationRemapper(descriptor, annotationVisitor);
+				}
+			};
+		}
+	}
+
+	private class BeanNameAnnotationRemapper extends AnnotationRemapper {
+
+		BeanNameAnnotationRemapper(String descriptor, AnnotationVisitor annotationVisitor) {
+			super(Opcodes.ASM9, descriptor, annotationVisitor, BytecodeObfuscator.this.remapper);
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			super.visit(name, value instanceof String ? mapBeanName((String) value) : value);
+		}
+	}
+
+	private class MappingRemapper extends Remapper {
+
+		@Override
+		public String map(String internalName) {
+			return classMapping.getOrDefault(internalName, internalName);
+		}
+
+		@Override
+		public String mapFieldName(String owner, String name, String descriptor) {
+			String declaring = fieldOwnerCache.computeIfAbsent(owner + "." + name, key -> {
+				String found = findFieldOwner(owner, name);
+				return found == null ? "" : found;
+			});
+			return declaring.isEmpty() ? name : fieldMapping.getOrDefault(declaring + "." + name, name);
+		}
+
+		@Override
+		public String mapMethodName(String owner, String name, String descriptor) {
+			return methodMapping.getOrDefault(owner + "." + name + descriptor, name);
+		}
+
+		// Строковые константы с полным именем класса (Class.forName и т.п.)
+		@Override
+		public Object mapValue(Object value) {
+			if (value instanceof String) {
+				String string = (String) value;
+				String mapped = string.indexOf('.') > 0 && string.indexOf('/') < 0 ? classMapping.get(string.replace('.', '/')) : null;
+				if (mapped != null) {
+					return mapped.replace('/', '.');
+				}
+			}
+			return super.mapValue(value);
+		}
+	}
+}
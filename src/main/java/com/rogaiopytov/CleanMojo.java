@@ -43,6 +43,7 @@ public class CleanMojo extends AbstractMojo {
 			} catch (IOException e) {
 				throw new MojoExecutionException("Failed to delete 'obfs' directory.", e);
 			}
+			SourceIndex.invalidate(getPluginContext(), obfsDir);
 		}
 
 		getLog().info(String.format("%s: Cleaned successfully.", logPrefix));
@@ -12,11 +12,22 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Properties;
 
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
@@ -27,13 +38,17 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.FileUtils;
-import org.twdata.maven.mojoexecutor.MojoExecutor.Element;
 
 @Mojo(name = "compile", threadSafe = true, requiresDependencyResolution = ResolutionScope.COMPILE)
 public class CompileMojo extends AbstractMojo {
 
 	private final String logPrefix = "Compile Goal";
 
+	// Хеш входов (compileInputs), из которых собраны текущие target/classes.
+	// Пишется только с buildCache и удаляется перед каждой компиляцией, так что
+	// rik:build может не запускать компиляцию, если классы уже актуальны
+	static final String COMPILED_INPUTS_FILE = "rik-compile-inputs.txt";
+
 	@Component
 	private MavenProject project;
 
@@ -46,64 +61,232 @@ public class CompileMojo extends AbstractMojo {
 	@Parameter(property = "src", defaultValue = "${project.basedir}/src", required = true)
 	private String src;
 
+	// Компиляция в процессе через javax.tools: перекомпилируются только
+	// изменённые исходники и классы, зависящие от изменившегося ABI
+	// (граф в target/rik-compile-state.txt). Процессоры аннотаций не запускаются.
+	@Parameter(property = "incremental", defaultValue = "false")
+	private boolean incremental;
+
+	// Локальный кеш результатов (BuildCache): при тех же исходниках, classpath и
+	// параметрах компиляции классы берутся из кеша
+	@Parameter(property = "buildCache", defaultValue = "false")
+	private boolean buildCache;
+
+	@Parameter(property = "buildCacheDir", defaultValue = "${user.home}/.m2/rik-cache")
+	private File buildCacheDir;
+
+	// Предельный размер кеша в мегабайтах
+	@Parameter(property = "buildCacheSize", defaultValue = "2048")
+	private long buildCacheSize;
 
 	@Override
 	public void execute() throws MojoExecutionException {
 		getLog().info(String.format("%s: Compile goal started", logPrefix));
 
-		Set<String> compileSourceRoots = new HashSet<>();
 		File srcDir = new File(src, "main/java");
 		if (!srcDir.exists() || !srcDir.isDirectory()) {
 			throw new MojoExecutionException(
 					String.format("%s: The provided source directory does not exist or is not a directory: %s", logPrefix, src));
 		}
-		findJavaSourceRoots(srcDir, compileSourceRoots);
+		List<Path> sources;
+		try {
+			sources = SourceIndex.get(getPluginContext(), srcDir.toPath()).findFiles("**/*.java");
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error scanning source directory: %s", logPrefix, srcDir), e);
+		}
 
-		if (compileSourceRoots.isEmpty()) {
-			getLog().warn(String.format("%s: No Java source files found under directory: %s", logPrefix, src));
+		Path inputsFile = Paths.get(project.getBuild().getDirectory(), COMPILED_INPUTS_FILE);
+		try {
+			Files.deleteIfExists(inputsFile);
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Could not delete %s", logPrefix, inputsFile), e);
+		}
+
+		BuildCache cache = null;
+		String inputs = null;
+		String cacheKey = null;
+		Map<String, Path> outputs = new LinkedHashMap<>();
+		outputs.put("classes", Paths.get(project.getBuild().getOutputDirectory()));
+		// Состояние инкрементальной компиляции относится к тем же классам
+		Path stateFile = Paths.get(project.getBuild().getDirectory(), "rik-compile-state.txt");
+		if (incremental) {
+			outputs.put("rik-compile-state.txt", stateFile);
+		}
+		if (buildCache) {
+			cache = new BuildCache(buildCacheDir.toPath(), buildCacheSize * 1024 * 1024);
+			try {
+				inputs = compileInputs(project, getPluginContext(), srcDir);
+				cacheKey = new BuildCache.Key("compile").add("inputs", inputs).add("incremental", String.valueOf(incremental)).build();
+				long started = System.nanoTime();
+				if (cache.restore(cacheKey, outputs, CompileMojo::isClassFile)) {
+					if (!incremental) {
+						Files.deleteIfExists(stateFile);
+					}
+					getLog().info(String.format("%s: Build cache hit %s, restored classes in %d ms", logPrefix, cacheKey.substring(0, 12),
+							(System.nanoTime() - started) / 1_000_000));
+					copyMetaInfResources(src);
+					writeCompiledInputs(inputsFile, inputs);
+					return;
+				}
+				getLog().info(String.format("%s: Build cache miss %s", logPrefix, cacheKey.substring(0, 12)));
+			} catch (IOException e) {
+				getLog().warn(String.format("%s: Build cache is unavailable, compiling: %s", logPrefix, e.getMessage()));
+				cache = null;
+				inputs = null;
+			} catch (DependencyResolutionRequiredException e) {
+				throw new MojoExecutionException(String.format("%s: Compile classpath is not resolved", logPrefix), e);
+			}
+		}
+
+		if (incremental) {
+			compileIncrementally(srcDir, sources);
 		} else {
-			getLog().info(String.format("%s: Found Java source roots: %s", logPrefix, compileSourceRoots));
+			compileWithPlugin(srcDir, sources);
+		}
+		if (cache != null) {
+			try {
+				cache.store(cacheKey, outputs, CompileMojo::isClassFile);
+				getLog().info(String.format("%s: Stored classes in build cache %s%s", logPrefix, buildCacheDir.getAbsolutePath(),
+						cache.getEvicted() > 0 ? ", evicted " + cache.getEvicted() + " least recently used entries" : ""));
+			} catch (IOException e) {
+				getLog().warn(String.format("%s: Could not store classes in build cache: %s", logPrefix, e.getMessage()));
+			}
 		}
+		copyMetaInfResources(src);
+		if (inputs != null) {
+			writeCompiledInputs(inputsFile, inputs);
+		}
+	}
 
-		List<Element> sourceRootElements = new ArrayList<>();
-		for (String dir : compileSourceRoots) {
-			sourceRootElements.add(element("compileSourceRoot", dir));
+	// В кеш попадает только вывод компилятора: ресурсы (META-INF и др.) в ключ
+	// не входят и копируются в target/classes отдельно
+	private static boolean isClassFile(Path path) {
+		return path.getFileName().toString().endsWith(".class");
+	}
+
+	// true, если target/classes собраны из входов с этим хешем
+	static boolean isCompiledFrom(MavenProject project, String inputs) throws IOException {
+		Path inputsFile = Paths.get(project.getBuild().getDirectory(), COMPILED_INPUTS_FILE);
+		return Files.isDirectory(Paths.get(project.getBuild().getOutputDirectory())) && Files.isRegularFile(inputsFile)
+				&& Files.readString(inputsFile).trim().equals(inputs);
+	}
+
+	private void writeCompiledInputs(Path inputsFile, String inputs) {
+		try {
+			Files.writeString(inputsFile, inputs + "\n");
+		} catch (IOException e) {
+			getLog().warn(String.format("%s: Could not write %s: %s", logPrefix, inputsFile, e.getMessage()));
 		}
+	}
 
-		getLog().info(String.format("%s: Compiling using these source roots: %s", logPrefix, compileSourceRoots));
+	private void compileWithPlugin(File srcDir, List<Path> sources) throws MojoExecutionException {
+		// src/main/java - единственный корень исходников: пакеты внутри него не
+		// являются отдельными корнями
+		if (sources.isEmpty()) {
+			getLog().warn(String.format("%s: No Java source files found under directory: %s", logPrefix, src));
+		}
+		String sourceRoot;
+		try {
+			sourceRoot = srcDir.getCanonicalPath();
+		} catch (IOException e) {
+			getLog().warn(String.format("%s: Failed to get canonical path for directory %s", logPrefix, srcDir.getAbsolutePath()), e);
+			sourceRoot = srcDir.getAbsolutePath();
+		}
+		getLog().info(String.format("%s: Compiling %d source files from %s", logPrefix, sources.size(), sourceRoot));
 
 		executeMojo(plugin(groupId("org.apache.maven.plugins"), artifactId("maven-compiler-plugin"), version("3.14.0")), goal("compile"),
-				configuration(element("compileSourceRoots", sourceRootElements.toArray(new Element[0]))),
+				configuration(element("compileSourceRoots", element("compileSourceRoot", sourceRoot))),
 				executionEnvironment(project, session, pluginManager));
-
-		copyMetaInfResources(src);
 	}
 
-	private void findJavaSourceRoots(File dir, Set<String> roots) {
-		File[] files = dir.listFiles();
-		if (files == null) {
-			return;
+	// Входы компиляции: исходники, classpath (кроме собственного каталога
+	// классов), версия Java и параметры компилятора. По этому же хешу rik:build
+	// ищет WAR в кеше ещё до компиляции
+	static String compileInputs(MavenProject project, Map<?, ?> pluginContext, File srcDir)
+			throws IOException, DependencyResolutionRequiredException {
+		BuildCache.Key key = new BuildCache.Key("compile-inputs");
+		Properties properties = project.getProperties();
+		key.add("plugin", "rik-maven-plugin:1.0")
+				.add("java", System.getProperty("java.specification.version"));
+		for (String property : List.of("project.build.sourceEncoding", "maven.compiler.release", "maven.compiler.source",
+				"maven.compiler.target")) {
+			key.add(property, properties.getProperty(property));
 		}
-		boolean containsJavaFile = false;
-		for (File file : files) {
-			if (file.isFile() && file.getName().endsWith(".java")) {
-				containsJavaFile = true;
-				break;
+		key.addTree("src", SourceIndex.get(pluginContext, srcDir.toPath()));
+		Path outputDir = Paths.get(project.getBuild().getOutputDirectory()).toAbsolutePath().normalize();
+		for (String element : project.getCompileClasspathElements()) {
+			Path path = Paths.get(element).toAbsolutePath().normalize();
+			if (path.equals(outputDir)) {
+				continue;
 			}
-		}
-		if (containsJavaFile) {
-			try {
-				roots.add(dir.getCanonicalPath());
-			} catch (Exception ex) {
-				getLog().warn(String.format("%s: Failed to get canonical path for directory %s", logPrefix,  dir.getAbsolutePath()), ex);
-				roots.add(dir.getAbsolutePath());
+			if (Files.isDirectory(path)) {
+				key.addTree("classpath " + path, SourceIndex.get(pluginContext, path));
+			} else {
+				key.addFileStamp("classpath", path);
 			}
 		}
-		for (File file : files) {
-			if (file.isDirectory()) {
-				findJavaSourceRoots(file, roots);
+		return key.build();
+	}
+
+	private void compileIncrementally(File srcDir, List<Path> sources) throws MojoExecutionException {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			throw new MojoExecutionException(String.format("%s: No Java compiler available, run Maven on a JDK rather than a JRE", logPrefix));
+		}
+
+		List<String> options = new ArrayList<>();
+		try {
+			options.add("-classpath");
+			options.add(String.join(File.pathSeparator, project.getCompileClasspathElements()));
+		} catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException(String.format("%s: Compile classpath is not resolved", logPrefix), e);
+		}
+		Properties properties = project.getProperties();
+		options.add("-encoding");
+		options.add(properties.getProperty("project.build.sourceEncoding", "UTF-8"));
+		String release = properties.getProperty("maven.compiler.release");
+		String source = properties.getProperty("maven.compiler.source");
+		if (release != null) {
+			options.add("--release");
+			options.add(release);
+		} else if (source != null) {
+			options.add("-source");
+			options.add(source);
+			options.add("-target");
+			options.add(properties.getProperty("maven.compiler.target", source));
+		}
+		options.add("-g");
+		options.add("-proc:none");
+
+		File outputDir = new File(project.getBuild().getOutputDirectory());
+		File stateFile = new File(project.getBuild().getDirectory(), "rik-compile-state.txt");
+		long started = System.nanoTime();
+		IncrementalCompiler compiler;
+		boolean success;
+		try {
+			compiler = new IncrementalCompiler(javac, srcDir.toPath(), outputDir.toPath(), options, stateFile.toPath());
+			success = compiler.compile(sources);
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new MojoExecutionException(String.format("%s: Incremental compilation failed", logPrefix), e);
+		}
+
+		for (Diagnostic<? extends JavaFileObject> diagnostic : compiler.getDiagnostics()) {
+			String message = String.format("%s: %s:%d: %s", logPrefix,
+					diagnostic.getSource() != null ? diagnostic.getSource().getName() : "javac", diagnostic.getLineNumber(),
+					diagnostic.getMessage(null));
+			if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+				getLog().error(message);
+			} else {
+				getLog().warn(message);
 			}
 		}
+		if (!success) {
+			throw new MojoExecutionException(String.format("%s: Compilation failed, see errors above", logPrefix));
+		}
+		String reason = compiler.getFullBuildReason();
+		getLog().info(String.format("%s: %s build compiled %d of %d sources in %d rounds in %d ms%s", logPrefix,
+				reason == null ? "Incremental" : "Full", compiler.getCompiledSources(), compiler.getTotalSources(),
+				compiler.getRounds(), (System.nanoTime() - started) / 1_000_000, reason == null ? "" : " (" + reason + ")"));
 	}
 
 	private void copyMetaInfResources(String src) {
@@ -0,0 +1,62 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Считает несколько хешей файла за одно чтение: каждый блок, прочитанный в
+// общий direct-буфер, по очереди отдаётся всем HashStrategy. Буфер и
+// состояния хешей переиспользуются между файлами, поэтому экземпляр не
+// потокобезопасен - каждому потоку нужен свой.
+public class FileHasher {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private final List<String> algorithms;
+	private final HashStrategy[] digests;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	public FileHasher(List<String> algorithms) throws NoSuchAlgorithmException {
+		this.algorithms = List.copyOf(algorithms);
+		this.digests = new HashStrategy[algorithms.size()];
+		for (int i = 0; i < digests.length; i++) {
+			digests[i] = HashStrategy.forAlgorithm(algorithms.get(i));
+		}
+	}
+
+	public List<String> getAlgorithms() {
+		return algorithms;
+	}
+
+	// Алгоритм -> хеш в hex, в порядке algorithms.
+	public Map<String, String> hash(Path file) throws IOException {
+		for (HashStrategy digest : digests) {
+			digest.reset();
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer.clear();
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				for (HashStrategy digest : digests) {
+					buffer.mark();
+					digest.update(buffer);
+					buffer.reset();
+				}
+				buffer.clear();
+			}
+		}
+
+		Map<String, String> hashes = new LinkedHashMap<>();
+		for (int i = 0; i < digests.length; i++) {
+			hashes.put(algorithms.get(i), HexFormat.of().formatHex(digests[i].digest()));
+		}
+		return hashes;
+	}
+}
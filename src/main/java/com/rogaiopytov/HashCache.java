@@ -0,0 +1,186 @@
+package com.rogaiopytov;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Кеш хешей между запусками rik:hash. Хеш файла переиспользуется, если у
+// файла те же размер, время изменения и fileKey (inode), что и при прошлом
+// хешировании. Формат бинарный:
+// int MAGIC, int VERSION, int количество алгоритмов, UTF названия,
+// int количество записей, затем записи: UTF путь, long размер,
+// long mtime в наносекундах, UTF fileKey, по каждому алгоритму short длина и байты хеша.
+public class HashCache {
+
+	private static final int MAGIC = 0x52494B48;
+	private static final int VERSION = 1;
+
+	private final List<String> algorithms;
+	private final Map<String, Entry> previous;
+	private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+	private HashCache(List<String> algorithms, Map<String, Entry> previous) {
+		this.algorithms = List.copyOf(algorithms);
+		this.previous = previous;
+	}
+
+	public static HashCache empty(List<String> algorithms) {
+		return new HashCache(algorithms, new HashMap<>());
+	}
+
+	// Кеш с другим набором алгоритмов не подходит и считается пустым.
+	// IOException означает повреждённый файл.
+	public static HashCache load(File file, List<String> algorithms) throws IOException {
+		if (!file.isFile()) {
+			return empty(algorithms);
+		}
+		long length = file.length();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unknown hash cache format: " + file.getAbsolutePath());
+			}
+			// Счётчики сверяются с длиной файла, чтобы обрезанный или испорченный
+			// кеш не приводил к огромным массивам: название алгоритма занимает не
+			// меньше 2 байт, запись - не меньше 20 байт и 2 байт на каждый хеш
+			int algorithmCount = in.readInt();
+			if (algorithmCount < 0 || algorithmCount > length / 2) {
+				throw new IOException("Corrupt hash cache, bad algorithm count " + algorithmCount + ": " + file.getAbsolutePath());
+			}
+			String[] cachedAlgorithms = new String[algorithmCount];
+			for (int i = 0; i < algorithmCount; i++) {
+				cachedAlgorithms[i] = in.readUTF();
+			}
+			if (!List.of(cachedAlgorithms).equals(algorithms)) {
+				return empty(algorithms);
+			}
+
+			int count = in.readInt();
+			if (count < 0 || count > length / (20 + 2L * algorithmCount)) {
+				throw new IOException("Corrupt hash cache, bad entry count " + count + ": " + file.getAbsolutePath());
+			}
+			Map<String, Entry> entries = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long size = in.readLong();
+				long modified = in.readLong();
+				String fileKey = in.readUTF();
+				byte[][] digests = new byte[algorithmCount][];
+				for (int j = 0; j < algorithmCount; j++) {
+					digests[j] = new byte[in.readUnsignedShort()];
+					in.readFully(digests[j]);
+				}
+				entries.put(path, new Entry(size, modified, fileKey, digests));
+			}
+			return new HashCache(algorithms, entries);
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt hash cache: " + file.getAbsolutePath(), e);
+		}
+	}
+
+	// Хеши из прошлого запуска, если файл с тех пор не менялся, иначе null.
+	// Найденная запись переносится в новый кеш.
+	public Map<String, String> get(String path, BasicFileAttributes attributes) {
+		Entry entry = previous.get(path);
+		if (entry == null || !entry.matches(attributes)) {
+			return null;
+		}
+		current.put(path, entry);
+		Map<String, String> hashes = new LinkedHashMap<>();
+		for (int i = 0; i < algorithms.size(); i++) {
+			hashes.put(algorithms.get(i), HexFormat.of().formatHex(entry.digests[i]));
+		}
+		return hashes;
+	}
+
+	public void put(String path, BasicFileAttributes attributes, Map<String, String> hashes) {
+		byte[][] digests = new byte[algorithms.size()][];
+		for (int i = 0; i < digests.length; i++) {
+			digests[i] = HexFormat.of().parseHex(hashes.get(algorithms.get(i)));
+		}
+		current.put(path, new Entry(attributes.size(), modified(attributes), fileKey(attributes), digests));
+	}
+
+	// Сохраняются только файлы, встреченные в этом запуске. Файлы, изменённые
+	// не раньше racyAfter (мс), не сохраняются: правка в пределах того же тика
+	// mtime после хеширования иначе осталась бы незамеченной.
+	public void save(File file, long racyAfter) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+		}
+		long racyAfterNanos = TimeUnit.MILLISECONDS.toNanos(racyAfter);
+		Map<String, Entry> entries = new HashMap<>();
+		current.forEach((path, entry) -> {
+			if (entry.modified < racyAfterNanos) {
+				entries.put(path, entry);
+			}
+		});
+
+		// Запись во временный файл и переименование: оборванная запись не оставит
+		// полуготовый кеш
+		File temp = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(algorithms.size());
+			for (String algorithm : algorithms) {
+				out.writeUTF(algorithm);
+			}
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				Entry value = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(value.size);
+				out.writeLong(value.modified);
+				out.writeUTF(value.fileKey);
+				for (byte[] digest : value.digests) {
+					out.writeShort(digest.length);
+					out.write(digest);
+				}
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static long modified(BasicFileAttributes attributes) {
+		return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+	}
+
+	private static String fileKey(BasicFileAttributes attributes) {
+		Object key = attributes.fileKey();
+		return key == null ? "" : key.toString();
+	}
+
+	private static final class Entry {
+		private final long size;
+		private final long modified;
+		private final String fileKey;
+		private final byte[][] digests;
+
+		private Entry(long size, long modified, String fileKey, byte[][] digests) {
+			this.size = size;
+			this.modified = modified;
+			this.fileKey = fileKey;
+			this.digests = digests;
+		}
+
+		private boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && modified == modified(attributes) && fileKey.equals(fileKey(attributes));
+		}
+	}
+}
@@ -11,14 +11,21 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -48,10 +55,42 @@ public class HashMojo extends AbstractMojo {
 	@Parameter(property = "src", defaultValue = "src")
 	private String src;
 
+	// Алгоритмы MessageDigest либо быстрые некриптографические CRC32C и XXH64,
+	// каждый файл читается один раз для всех сразу.
+	// В манифест попадают записи X-<АЛГОРИТМ>-<файл>.
+	@Parameter(property = "algorithms", defaultValue = "MD5,SHA-1")
+	private List<String> algorithms;
+
+	// Количество потоков для хеширования, 1 - последовательный режим.
+	@Parameter(property = "threads", defaultValue = "1")
+	private int threads;
+
+	// Хеши сохраняются в target/hash-cache.bin и переиспользуются для файлов,
+	// у которых не изменились размер, mtime и inode.
+	@Parameter(property = "hashCache", defaultValue = "true")
+	private boolean hashCache;
+
+	// files - по атрибуту на каждый файл и алгоритм; merkle - в манифест
+	// попадает только корень дерева Меркла (X-Merkle-<АЛГОРИТМ>) по первому
+	// алгоритму, а хеши файлов и каталогов пишутся в target/merkle-index.txt;
+	// fused - дерево не обходится, хеши всех записей WAR считает build
+	// (archiver=rik) в том же проходе, что и упаковку.
+	@Parameter(property = "mode", defaultValue = "files")
+	private String mode;
+
+	// Индекс Меркла другой сборки, с которым сравнивается текущая (режим merkle)
+	@Parameter(property = "diffAgainst")
+	private File diffAgainst;
+
+	// Передаётся цели build для воспроизводимой сборки
+	@Parameter(property = "outputTimestamp", defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
 	private String providedSrc;
 
-	private Map<String, String> md5Hashes = new HashMap<>();
-	private Map<String, String> sha1Hashes = new HashMap<>();
+	// Алгоритм -> (путь к файлу -> хеш). Отсортированные конкурентные мапы,
+	// чтобы порядок записей в манифесте не зависел от порядка работы потоков.
+	private Map<String, Map<String, String>> hashes = new LinkedHashMap<>();
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
@@ -62,32 +101,69 @@ public class HashMojo extends AbstractMojo {
 			throw new MojoExecutionException("Provided src directory does not exist or is not a directory: " + src);
 		}
 
+		if (!"files".equals(mode) && !"merkle".equals(mode) && !"fused".equals(mode)) {
+			throw new MojoExecutionException("Unknown hash mode '" + mode + "', expected 'files', 'merkle' or 'fused'");
+		}
+		if ("fused".equals(mode)) {
+			buildFused();
+			return;
+		}
+
+		FileHasher hasher;
 		try {
-			processDirectory(directory);
-		} catch (IOException | NoSuchAlgorithmException e) {
+			hasher = new FileHasher(algorithms);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException("Unsupported hash algorithm in " + algorithms, e);
+		}
+		for (String algorithm : algorithms) {
+			hashes.put(algorithm, new ConcurrentSkipListMap<>());
+		}
+
+		List<File> sources;
+		try {
+			sources = SourceIndex.get(getPluginContext(), directory.toPath()).findFiles("**/*.java").stream().map(Path::toFile)
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error scanning src directory: " + src, e);
+		}
+
+		long started = System.currentTimeMillis();
+		File cacheFile = new File(project.getBuild().getDirectory(), "hash-cache.bin");
+		HashCache cache = loadCache(cacheFile);
+		try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+			hashFiles(sources, hasher, cache, executor);
+		} catch (IOException e) {
 			throw new MojoExecutionException("Error processing files", e);
 		}
+		if (hashCache) {
+			try {
+				cache.save(cacheFile, started - 2000);
+			} catch (IOException e) {
+				getLog().warn("Could not write hash cache: " + cacheFile.getAbsolutePath(), e);
+			}
+		}
 		
 		List<ManifestEntry> manifestEntries = new ArrayList<>();
 
-        for (Map.Entry<String, String> entry : md5Hashes.entrySet()) {
-            File file = new File(entry.getKey());
-			String fileName = this.getFileName(file);
-            String entryName = "X-MD5-" + fileName;
-            ManifestEntry manifestEntry = new ManifestEntry(entryName, entry.getValue());
-            manifestEntries.add(manifestEntry);
-        }
-
-        for (Map.Entry<String, String> entry : sha1Hashes.entrySet()) {
-            File file = new File(entry.getKey());
-			String fileName = this.getFileName(file);
-            String entryName = "X-SHA-1-" + fileName;
-            ManifestEntry manifestEntry = new ManifestEntry(entryName, entry.getValue());
-            manifestEntries.add(manifestEntry);
-        }
+		if ("merkle".equals(mode)) {
+			MerkleTree tree = buildMerkleTree(directory);
+			manifestEntries.add(new ManifestEntry("X-Merkle-" + tree.getAlgorithm().toUpperCase(), tree.getRoot()));
+		} else {
+			for (Map.Entry<String, Map<String, String>> algorithmHashes : hashes.entrySet()) {
+				String prefix = "X-" + algorithmHashes.getKey().toUpperCase() + "-";
+				for (Map.Entry<String, String> entry : algorithmHashes.getValue().entrySet()) {
+					File file = new File(entry.getKey());
+					String fileName = this.getFileName(file);
+					manifestEntries.add(new ManifestEntry(prefix + fileName, entry.getValue()));
+				}
+			}
+		}
 
         List<Element> configElements = new ArrayList<>();
 		configElements.add(element("src", this.providedSrc));
+		if (outputTimestamp != null && !outputTimestamp.isEmpty()) {
+			configElements.add(element("outputTimestamp", outputTimestamp));
+		}
 		
 		if (!manifestEntries.isEmpty()) {
 	        List<Element> entryElements = new ArrayList<>();
@@ -113,20 +189,123 @@ public class HashMojo extends AbstractMojo {
 	        );
 	}
 
-	private void processDirectory(File file) throws IOException, NoSuchAlgorithmException {
-		if (file.isDirectory()) {
-			File[] files = file.listFiles();
-			if (files != null) {
-				for (File child : files) {
-					processDirectory(child);
+	private void buildFused() throws MojoExecutionException {
+		try {
+			new FileHasher(algorithms);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException("Unsupported hash algorithm in " + algorithms, e);
+		}
+		List<Element> algorithmElements = new ArrayList<>();
+		for (String algorithm : algorithms) {
+			algorithmElements.add(element("digestAlgorithm", algorithm));
+		}
+		List<Element> configElements = new ArrayList<>();
+		configElements.add(element("src", this.providedSrc));
+		configElements.add(element("archiver", "rik"));
+		configElements.add(element("digestAlgorithms", algorithmElements.toArray(new Element[0])));
+		if (outputTimestamp != null && !outputTimestamp.isEmpty()) {
+			configElements.add(element("outputTimestamp", outputTimestamp));
+		}
+		executeMojo(
+				plugin(
+						groupId("com.RogaIKopytov"),
+						artifactId("rik-maven-plugin"),
+						version("1.0")
+				),
+				goal("build"),
+				configuration(configElements.toArray(new Element[0])),
+				executionEnvironment(project, session, pluginManager)
+		);
+	}
+
+	private MerkleTree buildMerkleTree(File directory) throws MojoExecutionException {
+		String algorithm = algorithms.get(0);
+		Map<String, String> fileDigests = new TreeMap<>();
+		for (Map.Entry<String, String> entry : hashes.get(algorithm).entrySet()) {
+			String relative = directory.toPath().relativize(Paths.get(entry.getKey())).toString().replace(File.separatorChar, '/');
+			fileDigests.put(relative, entry.getValue());
+		}
+
+		MerkleTree tree;
+		File indexFile = new File(project.getBuild().getDirectory(), "merkle-index.txt");
+		try {
+			tree = MerkleTree.build(algorithm, fileDigests);
+			tree.save(indexFile);
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new MojoExecutionException("Error building Merkle tree", e);
+		}
+		getLog().info(String.format("Merkle root %s over %d files, index written to %s", tree.getRoot(), fileDigests.size(),
+				indexFile.getAbsolutePath()));
+
+		if (diffAgainst != null) {
+			try {
+				MerkleTree other = MerkleTree.load(diffAgainst);
+				if (!other.getAlgorithm().equals(algorithm)) {
+					throw new MojoExecutionException(
+							"Cannot compare a " + algorithm + " Merkle tree with a " + other.getAlgorithm() + " one: " + diffAgainst);
 				}
+				List<String> changed = tree.diff(other);
+				getLog().info(String.format("%d files differ from %s", changed.size(), diffAgainst.getAbsolutePath()));
+				for (String path : changed) {
+					getLog().info("  " + path);
+				}
+			} catch (IOException e) {
+				throw new MojoExecutionException("Error reading Merkle index: " + diffAgainst.getAbsolutePath(), e);
 			}
-		} else if (file.isFile() && file.getName().endsWith(".java")) {
-			String md5 = computeChecksum(file, "MD5");
-			String sha1 = computeChecksum(file, "SHA-1");
-			md5Hashes.put(file.getAbsolutePath(), md5);
-			sha1Hashes.put(file.getAbsolutePath(), sha1);
 		}
+		return tree;
+	}
+
+	private HashCache loadCache(File cacheFile) {
+		if (!hashCache) {
+			return HashCache.empty(algorithms);
+		}
+		try {
+			return HashCache.load(cacheFile, algorithms);
+		} catch (IOException e) {
+			getLog().warn("Hash cache is corrupt, rehashing all files: " + cacheFile.getAbsolutePath());
+			getLog().debug(e);
+			return HashCache.empty(algorithms);
+		}
+	}
+
+	// FileHasher не потокобезопасен, поэтому у каждого потока пула свой
+	// экземпляр; алгоритмы уже проверены на экземпляре first.
+	private void hashFiles(List<File> sources, FileHasher first, HashCache cache, ParallelExecutor executor) throws IOException {
+		ThreadLocal<FileHasher> hashers = ThreadLocal.withInitial(() -> {
+			try {
+				return new FileHasher(first.getAlgorithms());
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		if (!executor.isParallel()) {
+			hashers.set(first);
+		}
+
+		List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger rehashed = new AtomicInteger();
+		executor.forEach(sources, file -> {
+			try {
+				String path = file.getAbsolutePath();
+				BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+				Map<String, String> fileHashes = cache.get(path, attributes);
+				if (fileHashes == null) {
+					fileHashes = hashers.get().hash(file.toPath());
+					cache.put(path, attributes, fileHashes);
+					rehashed.incrementAndGet();
+				}
+				for (Map.Entry<String, String> entry : fileHashes.entrySet()) {
+					hashes.get(entry.getKey()).put(path, entry.getValue());
+				}
+			} catch (IOException e) {
+				errors.add(e);
+			}
+		});
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+		getLog().info(String.format("Hashed %d files, %d reused from cache", rehashed.get(), sources.size() - rehashed.get()));
 	}
 
 	private String getFileName(File file) {
@@ -140,29 +319,4 @@ public class HashMojo extends AbstractMojo {
 		}
 		return fileName.substring(0, dotIndex);
 	}
-
-	private String computeChecksum(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
-		MessageDigest digest = MessageDigest.getInstance(algorithm);
-		try (FileInputStream fis = new FileInputStream(file)) {
-			byte[] byteBuffer = new byte[1024];
-			int bytesRead;
-			while ((bytesRead = fis.read(byteBuffer)) != -1) {
-				digest.update(byteBuffer, 0, bytesRead);
-			}
-		}
-		byte[] hashBytes = digest.digest();
-		return bytesToHex(hashBytes);
-	}
-
-	private String bytesToHex(byte[] bytes) {
-		StringBuilder hexString = new StringBuilder();
-		for (byte b : bytes) {
-			String hex = Integer.toHexString(0xff & b);
-			if (hex.length() == 1) {
-				hexString.append('0');
-			}
-			hexString.append(hex);
-		}
-		return hexString.toString();
-	}
 }
@@ -0,0 +1,76 @@
+package com.rogaiopytov;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+// Алгоритм хеширования для rik:hash. Кроме любых алгоритмов MessageDigest
+// (MD5, SHA-1, SHA-256, ...) поддерживаются быстрые некриптографические
+// суммы для обнаружения изменений: CRC32C (аппаратная инструкция на
+// x86/ARM) и XXH64.
+public interface HashStrategy {
+
+	// Забирает все оставшиеся байты data.
+	void update(ByteBuffer data);
+
+	// Возвращает хеш и сбрасывает состояние.
+	byte[] digest();
+
+	void reset();
+
+	static HashStrategy forAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+		switch (algorithm.toUpperCase()) {
+		case "CRC32C":
+			return new Crc32cStrategy();
+		case "XXH64":
+			return new Xxh64();
+		default:
+			return new DigestStrategy(MessageDigest.getInstance(algorithm));
+		}
+	}
+
+	final class DigestStrategy implements HashStrategy {
+		private final MessageDigest digest;
+
+		private DigestStrategy(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		public void update(ByteBuffer data) {
+			digest.update(data);
+		}
+
+		@Override
+		public byte[] digest() {
+			return digest.digest();
+		}
+
+		@Override
+		public void reset() {
+			digest.reset();
+		}
+	}
+
+	final class Crc32cStrategy implements HashStrategy {
+		private final CRC32C crc = new CRC32C();
+
+		@Override
+		public void update(ByteBuffer data) {
+			crc.update(data);
+		}
+
+		@Override
+		public byte[] digest() {
+			int value = (int) crc.getValue();
+			crc.reset();
+			return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+		}
+
+		@Override
+		public void reset() {
+			crc.reset();
+		}
+	}
+}
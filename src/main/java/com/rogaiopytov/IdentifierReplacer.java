@@ -0,0 +1,166 @@
+package com.rogaiopytov;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Замена идентификаторов по всем маппингам за один линейный проход по тексту.
+// Ключи маппингов собираются в префиксное дерево (автомат в духе Aho-Corasick),
+// по которому текст проходится посимвольно. Совпадение всегда должно покрывать
+// идентификатор целиком (те же границы, что и у регулярки
+// (?<![@A-Za-z0-9_])...(?![A-Za-z0-9_])), поэтому суффиксные ссылки не нужны:
+// на каждой границе токена автомат просто возвращается в корень.
+public class IdentifierReplacer {
+
+	private final Node caseInsensitiveRoot = new Node();
+	private final Node caseSensitiveRoot = new Node();
+
+	// Маппинги без учёта регистра (классы) имеют приоритет над маппингами с учётом
+	// регистра (поля), как и раньше, когда классы заменялись первым проходом.
+	public IdentifierReplacer(Map<String, String> caseInsensitive, Map<String, String> caseSensitive) {
+		for (Map.Entry<String, String> entry : caseInsensitive.entrySet()) {
+			insert(caseInsensitiveRoot, entry.getKey(), entry.getValue(), true);
+		}
+		for (Map.Entry<String, String> entry : caseSensitive.entrySet()) {
+			insert(caseSensitiveRoot, entry.getKey(), entry.getValue(), false);
+		}
+	}
+
+	// Возвращает исходную строку, если в ней нечего заменять.
+	public String replace(String text) {
+		int length = text.length();
+		StringBuilder sb = null;
+		int copied = 0;
+		int i = 0;
+		while (i < length) {
+			if (!isIdentifierChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && isIdentifierChar(text.charAt(i))) {
+				i++;
+			}
+			String replacement = lookup(text, start, i);
+			if (replacement == null) {
+				continue;
+			}
+
+			if (sb == null) {
+				sb = new StringBuilder(length + 16);
+			}
+			sb.append(text, copied, start);
+			sb.append(adjustCase(replacement, text.substring(start, i)));
+			copied = i;
+		}
+
+		if (sb == null) {
+			return text;
+		}
+		sb.append(text, copied, length);
+		return sb.toString();
+	}
+
+	// Есть ли в тексте хотя бы один идентификатор из маппингов.
+	public boolean matches(String text) {
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			if (!isIdentifierChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && isIdentifierChar(text.charAt(i))) {
+				i++;
+			}
+			if (lookup(text, start, i) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Прогоняет токен text[start, end) по обоим деревьям одновременно.
+	private String lookup(String text, int start, int end) {
+		if (start > 0 && text.charAt(start - 1) == '@') {
+			return null;
+		}
+		Node insensitive = caseInsensitiveRoot;
+		Node sensitive = caseSensitiveRoot;
+		for (int i = start; i < end && (insensitive != null || sensitive != null); i++) {
+			char c = text.charAt(i);
+			if (insensitive != null) {
+				insensitive = insensitive.next(toLowerAscii(c));
+			}
+			if (sensitive != null) {
+				sensitive = sensitive.next(c);
+			}
+		}
+		if (insensitive != null && insensitive.replacement != null) {
+			return insensitive.replacement;
+		}
+		if (sensitive != null && sensitive.replacement != null) {
+			return sensitive.replacement;
+		}
+		return null;
+	}
+
+	// Делает так, что обфусцированное название классов всегда начинается с большой
+	// буквы, а переменных - с маленькой.
+	public static String adjustCase(String obfuscated, String original) {
+		if (original.equals(original.toUpperCase())) {
+			return obfuscated.toUpperCase();
+		} else if (original.equals(original.toLowerCase())) {
+			return obfuscated.toLowerCase();
+		} else if (Character.isUpperCase(original.charAt(0))) {
+			if (!obfuscated.isEmpty()) {
+				return Character.toUpperCase(obfuscated.charAt(0)) + obfuscated.substring(1);
+			}
+		} else if (Character.isLowerCase(original.charAt(0))) {
+			if (!obfuscated.isEmpty()) {
+				return Character.toLowerCase(obfuscated.charAt(0)) + obfuscated.substring(1);
+			}
+		}
+		return obfuscated;
+	}
+
+	private static void insert(Node root, String key, String value, boolean ignoreCase) {
+		if (key.isEmpty()) {
+			return;
+		}
+		Node node = root;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			node = node.child(ignoreCase ? toLowerAscii(c) : c);
+		}
+		// Совпадает с прежним поведением, когда из нескольких ключей, отличающихся
+		// только регистром, срабатывал первый.
+		if (node.replacement == null) {
+			node.replacement = value;
+		}
+	}
+
+	private static boolean isIdentifierChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	private static char toLowerAscii(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	private static final class Node {
+		private Map<Character, Node> children;
+		private String replacement;
+
+		private Node next(char c) {
+			return children == null ? null : children.get(c);
+		}
+
+		private Node child(char c) {
+			if (children == null) {
+				children = new HashMap<>(4);
+			}
+			return children.computeIfAbsent(c, k -> new Node());
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+// Инкрементальная компиляция через javax.tools в процессе Maven. Между
+// запусками хранится граф классов, извлечённый ASM из скомпилированных
+// .class файлов. Формат текстовый, по записи на строку:
+// O <хеш опций и classpath>
+// S <исходник> <хеш содержимого> <классы исходника>
+// C <класс> <хеш ABI> <хеш констант> <супертипы> <зависимости>
+// Компилируются изменённые исходники, затем, пока у каких-то классов меняется
+// ABI, - исходники классов, которые ссылаются на них или на их наследников.
+// Значения констант javac встраивает в код без ссылки на класс, поэтому при
+// их изменении, как и при любой несогласованности графа, собирается всё.
+public class IncrementalCompiler {
+
+	private static final String HEADER = "# rik compile state v1";
+
+	private final JavaCompiler javac;
+	private final Path sourceDir;
+	private final Path outputDir;
+	private final List<String> options;
+	private final Path stateFile;
+	private final HashStrategy hash;
+	private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+	private String optionsHash;
+	private final Map<String, SourceRecord> sources = new TreeMap<>();
+	private final Map<String, ClassRecord> classes = new TreeMap<>();
+
+	private String fullBuildReason;
+	private int compiledSources;
+	private int rounds;
+
+	// options - опции javac без -d, classpath уже в них
+	public IncrementalCompiler(JavaCompiler javac, Path sourceDir, Path outputDir, List<String> options, Path stateFile)
+			throws NoSuchAlgorithmException {
+		this.javac = javac;
+		this.sourceDir = sourceDir;
+		this.outputDir = outputDir;
+		this.options = List.copyOf(options);
+		this.stateFile = stateFile;
+		this.hash = HashStrategy.forAlgorithm("XXH64");
+	}
+
+	// sourceFiles - все .java внутри sourceDir. false - ошибки компиляции, см.
+	// getDiagnostics(). Состояние в этом случае удаляется, и следующий запуск
+	// будет полным.
+	public boolean compile(List<Path> sourceFiles) throws IOException {
+		Map<String, String> current = hashSources(sourceFiles);
+		optionsHash = hashOptions();
+		Map<String, ClassRecord> previousClasses = new HashMap<>();
+		Set<String> pending = new TreeSet<>();
+		Set<String> removedClasses = new HashSet<>();
+
+		fullBuildReason = loadState();
+		if (fullBuildReason == null) {
+			for (Map.Entry<String, String> entry : current.entrySet()) {
+				SourceRecord record = sources.get(entry.getKey());
+				if (record == null || !record.hash.equals(entry.getValue())) {
+					pending.add(entry.getKey());
+				}
+			}
+			for (String source : new ArrayList<>(sources.keySet())) {
+				if (!current.containsKey(source)) {
+					removedClasses.addAll(sources.remove(source).classes);
+				}
+			}
+			previousClasses.putAll(classes);
+		} else {
+			// Классы из прежнего состояния удаляются, чтобы не осталось классов
+			// удалённых исходников
+			for (SourceRecord record : sources.values()) {
+				removedClasses.addAll(record.classes);
+			}
+			sources.clear();
+			classes.clear();
+			pending.addAll(current.keySet());
+		}
+		deleteClasses(removedClasses);
+
+		Set<String> compiled = new HashSet<>();
+		Set<String> changedTypes = new HashSet<>();
+		compareAbi(removedClasses, previousClasses, changedTypes);
+		while (!pending.isEmpty() || !changedTypes.isEmpty()) {
+			if (!pending.isEmpty()) {
+				rounds++;
+				Set<String> replaced = new HashSet<>();
+				for (String source : pending) {
+					SourceRecord record = sources.remove(source);
+					if (record != null) {
+						replaced.addAll(record.classes);
+					}
+				}
+				deleteClasses(replaced);
+
+				Map<String, List<String>> produced = new TreeMap<>();
+				if (!runJavac(pending, produced)) {
+					Files.deleteIfExists(stateFile);
+					return false;
+				}
+				compiled.addAll(pending);
+				compiledSources += pending.size();
+				for (String source : pending) {
+					List<String> sourceClasses = produced.getOrDefault(source, Collections.emptyList());
+					sources.put(source, new SourceRecord(current.get(source), sourceClasses));
+					for (String name : sourceClasses) {
+						classes.put(name, analyze(outputDir.resolve(name + ".class")));
+						replaced.add(name);
+					}
+				}
+
+				compareAbi(replaced, previousClasses, changedTypes);
+			}
+
+			pending = new TreeSet<>();
+			if (fullBuildReason != null) {
+				// Полная сборка: всё, что ещё не перекомпилировано в этом запуске
+				for (String source : current.keySet()) {
+					if (!compiled.contains(source)) {
+						pending.add(source);
+					}
+				}
+			} else {
+				for (String source : dependentSources(changedTypes)) {
+					if (!compiled.contains(source)) {
+						pending.add(source);
+					}
+				}
+			}
+			changedTypes.clear();
+		}
+
+		saveState();
+		return true;
+	}
+
+	public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+		return diagnostics.getDiagnostics();
+	}
+
+	// Причина полной сборки или null, если сборка была инкрементальной
+	public String getFullBuildReason() {
+		return fullBuildReason;
+	}
+
+	public int getCompiledSources() {
+		return compiledSources;
+	}
+
+	public int getTotalSources() {
+		return sources.size();
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	private boolean runJavac(Set<String> pending, Map<String, List<String>> produced) throws IOException {
+		Files.createDirectories(outputDir);
+		List<File> files = pending.stream().map(source -> sourceDir.resolve(source).toFile()).collect(Collectors.toList());
+		List<String> arguments = new ArrayList<>(options);
+		arguments.add("-d");
+		arguments.add(outputDir.toString());
+
+		try (StandardJavaFileManager standard = javac.getStandardFileManager(diagnostics, null, null);
+				JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standard) {
+					// Соответствие исходник -> классы javac сообщает при создании каждого .class
+					@Override
+					public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+							FileObject sibling) throws IOException {
+						if (kind == JavaFileObject.Kind.CLASS && sibling != null) {
+							String source = relative(Paths.get(sibling.toUri()));
+							produced.computeIfAbsent(source, key -> new ArrayList<>()).add(className.replace('.', '/'));
+						}
+						return super.getJavaFileForOutput(location, className, kind, sibling);
+					}
+				}) {
+			return javac.getTask(null, fileManager, diagnostics, arguments, null, standard.getJavaFileObjectsFromFiles(files)).call();
+		}
+	}
+
+	// Классы с изменившимся ABI попадают в changedTypes. Изменение констант
+	// (в том числе у удалённого класса) переключает сборку на полную.
+	private void compareAbi(Set<String> names, Map<String, ClassRecord> previousClasses, Set<String> changedTypes) {
+		String noConstants = digest("");
+		for (String name : names) {
+			ClassRecord before = previousClasses.get(name);
+			ClassRecord after = classes.get(name);
+			if (before == null) {
+				continue;
+			}
+			if (after == null || !before.abi.equals(after.abi)) {
+				changedTypes.add(name);
+			}
+			if (fullBuildReason == null && !before.constants.equals(after != null ? after.constants : noConstants)) {
+				fullBuildReason = "constants changed in " + name.replace('/', '.');
+			}
+		}
+	}
+
+	// Исходники классов, которые ссылаются на changedTypes или на их наследников
+	private Set<String> dependentSources(Set<String> changedTypes) {
+		if (changedTypes.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Set<String> affected = new HashSet<>(changedTypes);
+		boolean grown = true;
+		while (grown) {
+			grown = false;
+			for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+				if (!affected.contains(entry.getKey()) && !Collections.disjoint(entry.getValue().supertypes, affected)) {
+					affected.add(entry.getKey());
+					grown = true;
+				}
+			}
+		}
+
+		Map<String, String> owners = new HashMap<>();
+		for (Map.Entry<String, SourceRecord> entry : sources.entrySet()) {
+			for (String name : entry.getValue().classes) {
+				owners.put(name, entry.getKey());
+			}
+		}
+		Set<String> dependents = new TreeSet<>();
+		for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+			if (!Collections.disjoint(entry.getValue().dependencies, affected)) {
+				String owner = owners.get(entry.getKey());
+				if (owner != null) {
+					dependents.add(owner);
+				}
+			}
+		}
+		return dependents;
+	}
+
+	private ClassRecord analyze(Path classFile) throws IOException {
+		ClassReader reader = new ClassReader(Files.readAllBytes(classFile));
+		Set<String> dependencies = new TreeSet<>();
+		ClassNode node = new ClassNode();
+		// Remapper видит все имена типов: в константах, дескрипторах,
+		// сигнатурах, аннотациях и коде методов
+		reader.accept(new ClassRemapper(node, new Remapper() {
+			@Override
+			public String map(String internalName) {
+				dependencies.add(internalName);
+				return internalName;
+			}
+		}), ClassReader.SKIP_FRAMES);
+		dependencies.remove(node.name);
+
+		List<String> supertypes = new ArrayList<>();
+		if (node.superName != null) {
+			supertypes.add(node.superName);
+		}
+		supertypes.addAll(node.interfaces);
+
+		StringBuilder abi = new StringBuilder();
+		abi.append(node.access).append(' ').append(node.name).append(' ').append(node.signature).append(' ')
+				.append(supertypes).append('\n');
+		StringBuilder constants = new StringBuilder();
+		List<FieldNode> fields = new ArrayList<>(node.fields);
+		fields.sort(Comparator.comparing(field -> field.name));
+		for (FieldNode field : fields) {
+			if ((field.access & Opcodes.ACC_PRIVATE) == 0) {
+				abi.append("F ").append(field.access).append(' ').append(field.name).append(' ').append(field.desc).append(' ')
+						.append(field.signature).append('\n');
+				if (field.value != null) {
+					constants.append(field.name).append('=').append(field.value).append('\n');
+				}
+			}
+		}
+		List<MethodNode> methods = new ArrayList<>(node.methods);
+		methods.sort(Comparator.comparing(method -> method.name + method.desc));
+		for (MethodNode method : methods) {
+			if ((method.access & Opcodes.ACC_PRIVATE) == 0) {
+				abi.append("M ").append(method.access).append(' ').append(method.name).append(method.desc).append(' ')
+						.append(method.signature).append(' ').append(method.exceptions).append('\n');
+			}
+		}
+		// InnerClasses перечисляет и чужие вложенные классы, на которые есть ссылки
+		// в коде; в ABI входят только собственные
+		for (InnerClassNode inner : node.innerClasses) {
+			if (!node.name.equals(inner.outerName) && !inner.name.startsWith(node.name + "$")) {
+				continue;
+			}
+			abi.append("I ").append(inner.access).append(' ').append(inner.name).append('\n');
+		}
+		if (node.permittedSubclasses != null) {
+			abi.append("P ").append(node.permittedSubclasses).append('\n');
+		}
+		return new ClassRecord(digest(abi.toString()), digest(constants.toString()), supertypes, new ArrayList<>(dependencies));
+	}
+
+	private Map<String, String> hashSources(List<Path> files) throws IOException {
+		Map<String, String> hashes = new TreeMap<>();
+		for (Path file : files) {
+			hash.update(ByteBuffer.wrap(Files.readAllBytes(file)));
+			hashes.put(relative(file), HexFormat.of().formatHex(hash.digest()));
+		}
+		return hashes;
+	}
+
+	// Опции и размер и время изменения каждого элемента classpath: пересобранный
+	// jar с тем же путём тоже требует полной сборки
+	private String hashOptions() throws IOException {
+		StringBuilder sb = new StringBuilder(String.join("\n", options));
+		for (int i = 0; i < options.size() - 1; i++) {
+			if ("-classpath".equals(options.get(i))) {
+				for (String element : options.get(i + 1).split(File.pathSeparator)) {
+					Path path = Paths.get(element);
+					if (Files.isRegularFile(path)) {
+						sb.append('\n').append(element).append(' ').append(Files.size(path)).append(' ')
+								.append(Files.getLastModifiedTime(path).toMillis());
+					}
+				}
+			}
+		}
+		return digest(sb.toString());
+	}
+
+	// Возвращает причину полной сборки или null, если состояние пригодно
+	private String loadState() throws IOException {
+		if (!Files.isRegularFile(stateFile)) {
+			return "no previous compile state";
+		}
+		try (BufferedReader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return "unknown compile state format";
+			}
+			String line;
+			String savedOptions = null;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				if ("O".equals(parts[0]) && parts.length == 2) {
+					savedOptions = parts[1];
+				} else if ("S".equals(parts[0]) && parts.length == 4) {
+					sources.put(parts[1], new SourceRecord(parts[2], split(parts[3])));
+				} else if ("C".equals(parts[0]) && parts.length == 6) {
+					classes.put(parts[1], new ClassRecord(parts[2], parts[3], split(parts[4]), split(parts[5])));
+				} else {
+					return "malformed compile state";
+				}
+			}
+			if (!optionsHash.equals(savedOptions)) {
+				return "compiler options or classpath changed";
+			}
+		}
+		for (SourceRecord record : sources.values()) {
+			for (String name : record.classes) {
+				if (!classes.containsKey(name) || !Files.isRegularFile(outputDir.resolve(name + ".class"))) {
+					return "class files are missing from " + outputDir;
+				}
+			}
+		}
+		return null;
+	}
+
+	private void saveState() throws IOException {
+		Files.createDirectories(stateFile.getParent());
+		try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.write("O\t" + optionsHash);
+			writer.newLine();
+			for (Map.Entry<String, SourceRecord> entry : sources.entrySet()) {
+				writer.write("S\t" + entry.getKey() + "\t" + entry.getValue().hash + "\t" + String.join(",", entry.getValue().classes));
+				writer.newLine();
+			}
+			for (Map.Entry<String, ClassRecord> entry : classes.entrySet()) {
+				ClassRecord record = entry.getValue();
+				// Зависимости от JDK и библиотек в графе не нужны
+				List<String> dependencies = record.dependencies.stream().filter(classes::containsKey).collect(Collectors.toList());
+				writer.write("C\t" + entry.getKey() + "\t" + record.abi + "\t" + record.constants + "\t"
+						+ String.join(",", record.supertypes) + "\t" + String.join(",", dependencies));
+				writer.newLine();
+			}
+		}
+	}
+
+	private void deleteClasses(Set<String> names) throws IOException {
+		for (String name : names) {
+			classes.remove(name);
+			Files.deleteIfExists(outputDir.resolve(name + ".class"));
+		}
+	}
+
+	private String relative(Path file) {
+		return sourceDir.relativize(file).toString().replace(File.separatorChar, '/');
+	}
+
+	private String digest(String value) {
+		hash.update(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+		return HexFormat.of().formatHex(hash.digest());
+	}
+
+	private static List<String> split(String value) {
+		return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+	}
+
+	private static final class SourceRecord {
+		private final String hash;
+		private final List<String> classes;
+
+		private SourceRecord(String hash, List<String> classes) {
+			this.hash = hash;
+			this.classes = classes;
+		}
+	}
+
+	private static final class ClassRecord {
+		private final String abi;
+		private final String constants;
+		private final List<String> supertypes;
+		private final List<String> dependencies;
+
+		private ClassRecord(String abi, String constants, List<String> supertypes, List<String> dependencies) {
+			this.abi = abi;
+			this.constants = constants;
+			this.supertypes = supertypes;
+			this.dependencies = dependencies;
+		}
+	}
+}
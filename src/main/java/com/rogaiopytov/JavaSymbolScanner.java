@@ -0,0 +1,398 @@
+package com.rogaiopytov;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Однопроходный лексер для поиска объявлений классов и полей в .java файле.
+// Комментарии, строковые и символьные литералы (включая text blocks)
+// пропускаются, ключевые слова никогда не считаются именами. Вложенность
+// отслеживается по фигурным скобкам, поэтому поле относится к тому классу,
+// в теле которого оно объявлено.
+// Токены не материализуются в строки: хранятся только их границы в тексте,
+// а строки создаются лишь для найденных имён.
+public class JavaSymbolScanner {
+
+	// Как и регулярки раньше, ищутся только имена из [A-Za-z][A-Za-z0-9_]* -
+	// другие идентификаторы IdentifierReplacer всё равно не умеет заменять.
+	private static final String[] KEYWORDS = { "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+			"const", "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+			"implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private", "protected",
+			"public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+			"transient", "try", "void", "volatile", "while", "true", "false", "null", "yield", "permits", "sealed" };
+
+	private static final String[] PRIMITIVES = { "boolean", "byte", "char", "short", "int", "long", "float", "double" };
+
+	private static final int NONE = 0;
+	private static final int IDENTIFIER = 1;
+	private static final int KEYWORD = 2;
+	private static final int LITERAL = 3;
+	private static final int PUNCTUATION = 4;
+
+	private final String text;
+	private final int length;
+	private int pos;
+
+	// Текущий токен
+	private int type;
+	private int start;
+	private int end;
+
+	// Два предыдущих значимых токена
+	private int prev1Type;
+	private int prev1Start;
+	private int prev1End;
+	private int prev2Type;
+	private int prev2Start;
+	private int prev2End;
+
+	private int braceDepth;
+	private int parenDepth;
+
+	// Объявление переменных, в котором могут встретиться ещё имена через запятую
+	private boolean inDeclaration;
+	private int declarationBraceDepth;
+	private int declarationParenDepth;
+	private boolean expectDeclarator;
+
+	// Имя класса, тело которого начнётся со следующей '{'
+	private String pendingClass;
+	private boolean expectClassName;
+	private boolean expectRecordName;
+	private final Deque<String> classNames = new ArrayDeque<>();
+	private final Deque<Integer> classDepths = new ArrayDeque<>();
+
+	private String packageName = "";
+	private final Set<String> symbols = new LinkedHashSet<>();
+	private final Map<String, Integer> identifierCounts = new HashMap<>();
+
+	public JavaSymbolScanner(String text) {
+		this.text = text;
+		this.length = text.length();
+	}
+
+	// Собирает полные названия классов (package.Class) и полей
+	// (package.Class.field) в порядке их появления в файле, см. getSymbols().
+	public void scan() {
+		boolean expectPackage = false;
+		StringBuilder packageBuilder = null;
+
+		while (nextToken()) {
+			if (expectPackage) {
+				if (isPunctuation(';')) {
+					packageName = packageBuilder.toString();
+					expectPackage = false;
+				} else {
+					packageBuilder.append(text, start, end);
+				}
+				continue;
+			}
+			if (type == KEYWORD && is("package") && braceDepth == 0 && classNames.isEmpty()) {
+				expectPackage = true;
+				packageBuilder = new StringBuilder();
+				continue;
+			}
+
+			if (type == IDENTIFIER) {
+				identifierCounts.merge(text.substring(start, end), 1, Integer::sum);
+			}
+			if (type == IDENTIFIER && expectClassName) {
+				declareClass();
+			} else if (type == IDENTIFIER && expectRecordName) {
+				// record - контекстное ключевое слово, которое может быть и обычным именем
+				if (peekPunctuation('(') || peekPunctuation('<')) {
+					declareClass();
+				}
+			}
+			expectClassName = false;
+			expectRecordName = false;
+
+			if (type == KEYWORD && (is("class") || is("interface") || is("enum"))) {
+				// Foo.class - литерал, @interface - аннотация, их имена не переименовываются
+				boolean classLiteral = prev1Type == PUNCTUATION && text.charAt(prev1Start) == '.';
+				boolean annotation = prev1Type == PUNCTUATION && text.charAt(prev1Start) == '@';
+				expectClassName = !classLiteral && !annotation;
+			} else if (type == IDENTIFIER && is("record") && !(prev1Type == PUNCTUATION && text.charAt(prev1Start) == '.')) {
+				expectRecordName = true;
+			} else if (type == PUNCTUATION) {
+				handlePunctuation(text.charAt(start));
+			}
+
+			shift();
+		}
+	}
+
+	// Результат последнего scan()
+	public Set<String> getSymbols() {
+		return symbols;
+	}
+
+	// Сколько раз каждый идентификатор встречается в коде (без комментариев и литералов)
+	public Map<String, Integer> getIdentifierCounts() {
+		return identifierCounts;
+	}
+
+	private void handlePunctuation(char c) {
+		switch (c) {
+		case '{':
+			braceDepth++;
+			if (pendingClass != null) {
+				classNames.push(pendingClass);
+				classDepths.push(braceDepth);
+				pendingClass = null;
+			}
+			break;
+		case '}':
+			if (!classDepths.isEmpty() && classDepths.peek() == braceDepth) {
+				classNames.pop();
+				classDepths.pop();
+			}
+			braceDepth--;
+			break;
+		case '(':
+			parenDepth++;
+			break;
+		case ')':
+			parenDepth--;
+			break;
+		case '=':
+		case ';':
+		case ',':
+			boolean separator = c == ',' && parenDepth == (inDeclaration ? declarationParenDepth : 0);
+			if (c != ',' || separator) {
+				checkDeclarator();
+			}
+			if (inDeclaration && braceDepth == declarationBraceDepth && parenDepth == declarationParenDepth) {
+				if (c == ';') {
+					inDeclaration = false;
+				} else if (c == ',') {
+					expectDeclarator = true;
+					return;
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		if (c != ',') {
+			expectDeclarator = false;
+		}
+	}
+
+	// prev2 prev1 и текущий токен (= ; ,) выглядят как "Тип имя =" или,
+	// внутри объявления, как ", имя ="
+	private void checkDeclarator() {
+		if (prev1Type != IDENTIFIER || classNames.isEmpty()) {
+			return;
+		}
+		boolean afterType = isTypeToken();
+		boolean afterComma = expectDeclarator && prev2Type == PUNCTUATION && text.charAt(prev2Start) == ',';
+		if (!afterType && !afterComma) {
+			return;
+		}
+		if (!isSimpleName(prev1Start, prev1End)) {
+			return;
+		}
+		symbols.add(currentClass() + "." + text.substring(prev1Start, prev1End));
+		if (!inDeclaration) {
+			inDeclaration = true;
+			declarationBraceDepth = braceDepth;
+			declarationParenDepth = parenDepth;
+		}
+	}
+
+	// Может ли prev2 быть концом типа: имя, примитив, ']' или закрывающая
+	// скобка дженерика. Дженерик закрывается вплотную к имени типа, в отличие
+	// от сравнения "i > n", сдвига "a >> b" и лямбды "x -> y".
+	private boolean isTypeToken() {
+		switch (prev2Type) {
+		case IDENTIFIER:
+			return true;
+		case KEYWORD:
+			for (String primitive : PRIMITIVES) {
+				if (regionIs(prev2Start, prev2End, primitive)) {
+					return true;
+				}
+			}
+			return false;
+		case PUNCTUATION:
+			char c = text.charAt(prev2Start);
+			if (c == ']') {
+				return true;
+			}
+			if (c != '>') {
+				return false;
+			}
+			int i = prev2Start;
+			while (i > 0 && text.charAt(i - 1) == '>') {
+				i--;
+			}
+			return i > 0 && !Character.isWhitespace(text.charAt(i - 1)) && text.charAt(i - 1) != '-';
+		default:
+			return false;
+		}
+	}
+
+	private void declareClass() {
+		if (!isSimpleName(start, end)) {
+			return;
+		}
+		String className = text.substring(start, end);
+		pendingClass = packageName.isEmpty() ? className : packageName + "." + className;
+		symbols.add(pendingClass);
+	}
+
+	private String currentClass() {
+		return classNames.peek();
+	}
+
+	private void shift() {
+		prev2Type = prev1Type;
+		prev2Start = prev1Start;
+		prev2End = prev1End;
+		prev1Type = type;
+		prev1Start = start;
+		prev1End = end;
+	}
+
+	private boolean nextToken() {
+		while (pos < length) {
+			char c = text.charAt(pos);
+			if (Character.isWhitespace(c)) {
+				pos++;
+			} else if (c == '/' && pos + 1 < length && text.charAt(pos + 1) == '/') {
+				while (pos < length && text.charAt(pos) != '\n') {
+					pos++;
+				}
+			} else if (c == '/' && pos + 1 < length && text.charAt(pos + 1) == '*') {
+				int close = text.indexOf("*/", pos + 2);
+				pos = close < 0 ? length : close + 2;
+			} else {
+				break;
+			}
+		}
+		if (pos >= length) {
+			return false;
+		}
+
+		start = pos;
+		char c = text.charAt(pos);
+		if (c == '"') {
+			skipString();
+			type = LITERAL;
+		} else if (c == '\'') {
+			skipQuoted('\'');
+			type = LITERAL;
+		} else if (Character.isJavaIdentifierStart(c)) {
+			while (pos < length && Character.isJavaIdentifierPart(text.charAt(pos))) {
+				pos++;
+			}
+			type = isKeyword(start, pos) ? KEYWORD : IDENTIFIER;
+		} else if (Character.isDigit(c) || (c == '.' && pos + 1 < length && Character.isDigit(text.charAt(pos + 1)))) {
+			skipNumber();
+			type = LITERAL;
+		} else if (c == '=' && pos + 1 < length && text.charAt(pos + 1) == '=') {
+			// '==' не должен выглядеть как присваивание
+			pos += 2;
+			type = LITERAL;
+		} else {
+			pos++;
+			type = PUNCTUATION;
+		}
+		end = pos;
+		return true;
+	}
+
+	private void skipString() {
+		if (text.startsWith("\"\"\"", pos)) {
+			int close = pos + 3;
+			while (close < length) {
+				char c = text.charAt(close);
+				if (c == '\\') {
+					close += 2;
+				} else if (text.startsWith("\"\"\"", close)) {
+					break;
+				} else {
+					close++;
+				}
+			}
+			pos = Math.min(length, close + 3);
+			return;
+		}
+		skipQuoted('"');
+	}
+
+	private void skipQuoted(char quote) {
+		pos++;
+		while (pos < length) {
+			char c = text.charAt(pos);
+			if (c == '\\') {
+				pos += 2;
+			} else if (c == quote || c == '\n') {
+				pos++;
+				return;
+			} else {
+				pos++;
+			}
+		}
+	}
+
+	private void skipNumber() {
+		while (pos < length) {
+			char c = text.charAt(pos);
+			if (Character.isLetterOrDigit(c) || c == '_' || c == '.') {
+				pos++;
+			} else if ((c == '+' || c == '-') && "eEpP".indexOf(text.charAt(pos - 1)) >= 0) {
+				pos++;
+			} else {
+				break;
+			}
+		}
+	}
+
+	private boolean peekPunctuation(char expected) {
+		int i = pos;
+		while (i < length && Character.isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		return i < length && text.charAt(i) == expected;
+	}
+
+	private boolean isPunctuation(char c) {
+		return type == PUNCTUATION && text.charAt(start) == c;
+	}
+
+	private boolean is(String word) {
+		return regionIs(start, end, word);
+	}
+
+	private boolean regionIs(int from, int to, String word) {
+		return to - from == word.length() && text.startsWith(word, from);
+	}
+
+	private boolean isKeyword(int from, int to) {
+		for (String keyword : KEYWORDS) {
+			if (regionIs(from, to, keyword)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isSimpleName(int from, int to) {
+		char first = text.charAt(from);
+		if (!((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z'))) {
+			return false;
+		}
+		for (int i = from + 1; i < to; i++) {
+			char c = text.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,139 @@
+package com.rogaiopytov;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Бинарный индекс маппингов для rik:retrace: обфусцированное имя -> исходное.
+// Записи отсортированы по ключу, файл открывается через mmap, и поиск идёт
+// двоичным поиском прямо по отображённой памяти, без загрузки в кучу.
+// Формат:
+// "RIKIDX01", int количество записей, int[] смещения записей,
+// затем записи: short длина ключа, ключ UTF-8, short длина значения, значение UTF-8.
+// Пакеты проекта хранятся как записи с пустым значением: их ключи содержат
+// точку, поэтому не пересекаются с именами.
+public class MappingIndex implements Closeable {
+
+	private static final byte[] MAGIC = "RIKIDX01".getBytes(StandardCharsets.US_ASCII);
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int tableStart;
+
+	private MappingIndex(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+		this.channel = channel;
+		this.buffer = buffer;
+		for (byte b : MAGIC) {
+			if (buffer.get() != b) {
+				throw new IOException("Not a mapping index");
+			}
+		}
+		this.count = buffer.getInt();
+		this.tableStart = buffer.position();
+	}
+
+	// names: обфусцированное имя в том виде, в каком оно встречается в коде, -> исходное
+	public static void write(File file, Map<String, String> names, Set<String> packages) throws IOException {
+		Map<String, String> entries = new TreeMap<>(names);
+		for (String packageName : packages) {
+			if (!packageName.isEmpty()) {
+				entries.put(packageName, "");
+			}
+		}
+
+		int offset = MAGIC.length + 4 + 4 * entries.size();
+		int[] offsets = new int[entries.size()];
+		byte[][] keys = new byte[entries.size()][];
+		byte[][] values = new byte[entries.size()][];
+		int i = 0;
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			keys[i] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			values[i] = entry.getValue().getBytes(StandardCharsets.UTF_8);
+			offsets[i] = offset;
+			offset += 4 + keys[i].length + values[i].length;
+			i++;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.write(MAGIC);
+			out.writeInt(entries.size());
+			for (int entryOffset : offsets) {
+				out.writeInt(entryOffset);
+			}
+			for (int j = 0; j < keys.length; j++) {
+				out.writeShort(keys[j].length);
+				out.write(keys[j]);
+				out.writeShort(values[j].length);
+				out.write(values[j]);
+			}
+		}
+	}
+
+	public static MappingIndex open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new MappingIndex(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	// Исходное имя для key, "" для пакета проекта, null если ключа нет.
+	// Ключи - ASCII, поэтому text сравнивается с ними побайтно.
+	public String lookup(CharSequence text, int start, int end) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = buffer.getInt(tableStart + 4 * mid);
+			int cmp = compareKey(entry, text, start, end);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				int keyLength = buffer.getShort(entry) & 0xFFFF;
+				int valueStart = entry + 2 + keyLength;
+				byte[] value = new byte[buffer.getShort(valueStart) & 0xFFFF];
+				buffer.get(valueStart + 2, value);
+				return new String(value, StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	private int compareKey(int entry, CharSequence text, int start, int end) {
+		int keyLength = buffer.getShort(entry) & 0xFFFF;
+		int length = end - start;
+		int limit = Math.min(keyLength, length);
+		for (int i = 0; i < limit; i++) {
+			int a = buffer.get(entry + 2 + i) & 0xFF;
+			int b = text.charAt(start + i);
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return keyLength - length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
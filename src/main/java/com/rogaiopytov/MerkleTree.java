@@ -0,0 +1,183 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Дерево Меркла по дереву исходников. Лист - хеш содержимого файла, узел
+// каталога - хеш отсортированного списка (имя, тип, хеш) его детей, поэтому
+// переименование или перенос файла тоже меняет хеши всех каталогов над ним.
+// Корень заменяет в манифесте тысячи атрибутов, а сравнение двух деревьев
+// спускается только в поддеревья с разными хешами.
+// Хранится в текстовом файле, по узлу на строку:
+// D <путь каталога> <хеш> / F <путь файла> <хеш>, корень - ".".
+public class MerkleTree {
+
+	private static final String HEADER = "# rik merkle v1 ";
+	public static final String ROOT = ".";
+
+	private final String algorithm;
+	// Путь -> хеш, пути через '/'
+	private final Map<String, String> digests = new TreeMap<>();
+	// Каталог -> имена детей по порядку
+	private final Map<String, TreeSet<String>> children = new TreeMap<>();
+
+	private MerkleTree(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	// fileDigests: относительный путь файла -> хеш его содержимого в hex
+	public static MerkleTree build(String algorithm, Map<String, String> fileDigests) throws NoSuchAlgorithmException {
+		MerkleTree tree = new MerkleTree(algorithm);
+		tree.children.put(ROOT, new TreeSet<>());
+		for (Map.Entry<String, String> entry : fileDigests.entrySet()) {
+			tree.digests.put(entry.getKey(), entry.getValue());
+			tree.link(entry.getKey());
+		}
+
+		// Каталоги считаются от самых глубоких к корню
+		List<String> directories = new ArrayList<>(tree.children.keySet());
+		directories.sort(Comparator.comparingInt(MerkleTree::depth).reversed());
+		HashStrategy digest = HashStrategy.forAlgorithm(algorithm);
+		for (String directory : directories) {
+			for (String name : tree.children.get(directory)) {
+				String child = tree.childPath(directory, name);
+				digest.update(ByteBuffer.wrap(new byte[] { (byte) (tree.children.containsKey(child) ? 'D' : 'F') }));
+				digest.update(ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8)));
+				digest.update(ByteBuffer.wrap(new byte[] { 0 }));
+				digest.update(ByteBuffer.wrap(HexFormat.of().parseHex(tree.digests.get(child))));
+			}
+			tree.digests.put(directory, HexFormat.of().formatHex(digest.digest()));
+		}
+		return tree;
+	}
+
+	public static MerkleTree load(File file) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith(HEADER)) {
+				throw new IOException("Unknown Merkle index format: " + file.getAbsolutePath());
+			}
+			MerkleTree tree = new MerkleTree(header.substring(HEADER.length()));
+			tree.children.put(ROOT, new TreeSet<>());
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				if (parts.length != 3 || !("D".equals(parts[0]) || "F".equals(parts[0]))) {
+					throw new IOException("Malformed Merkle index line in " + file.getAbsolutePath() + ": " + line);
+				}
+				tree.digests.put(parts[1], parts[2]);
+				if ("D".equals(parts[0])) {
+					tree.children.putIfAbsent(parts[1], new TreeSet<>());
+				}
+				if (!ROOT.equals(parts[1])) {
+					tree.link(parts[1]);
+				}
+			}
+			return tree;
+		}
+	}
+
+	public void save(File file) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(HEADER + algorithm);
+			writer.newLine();
+			for (Map.Entry<String, String> entry : digests.entrySet()) {
+				writer.write((children.containsKey(entry.getKey()) ? "D\t" : "F\t") + entry.getKey() + "\t" + entry.getValue());
+				writer.newLine();
+			}
+		}
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public String getRoot() {
+		return digests.get(ROOT);
+	}
+
+	// Пути файлов, которые есть только в одном из деревьев или отличаются.
+	// Совпавшие по хешу поддеревья не обходятся.
+	public List<String> diff(MerkleTree other) {
+		List<String> changed = new ArrayList<>();
+		diff(other, ROOT, changed);
+		return changed;
+	}
+
+	private void diff(MerkleTree other, String path, List<String> changed) {
+		String mine = digests.get(path);
+		String theirs = other.digests.get(path);
+		if (mine != null && mine.equals(theirs)) {
+			return;
+		}
+		boolean myDirectory = children.containsKey(path);
+		boolean theirDirectory = other.children.containsKey(path);
+		if (!myDirectory && !theirDirectory) {
+			changed.add(path);
+			return;
+		}
+
+		TreeSet<String> names = new TreeSet<>();
+		if (myDirectory) {
+			names.addAll(children.get(path));
+		} else if (mine != null) {
+			changed.add(path);
+		}
+		if (theirDirectory) {
+			names.addAll(other.children.get(path));
+		} else if (theirs != null) {
+			changed.add(path);
+		}
+		for (String name : names) {
+			diff(other, childPath(path, name), changed);
+		}
+	}
+
+	// Регистрирует путь у всех его родительских каталогов.
+	private void link(String path) {
+		String child = path;
+		while (true) {
+			int slash = child.lastIndexOf('/');
+			String parent = slash < 0 ? ROOT : child.substring(0, slash);
+			TreeSet<String> siblings = children.computeIfAbsent(parent, key -> new TreeSet<>());
+			if (!siblings.add(child.substring(slash + 1)) || ROOT.equals(parent)) {
+				return;
+			}
+			child = parent;
+		}
+	}
+
+	private String childPath(String directory, String name) {
+		return ROOT.equals(directory) ? name : directory + "/" + name;
+	}
+
+	private static int depth(String path) {
+		if (ROOT.equals(path)) {
+			return 0;
+		}
+		int depth = 1;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+}
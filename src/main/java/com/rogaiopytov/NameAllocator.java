@@ -0,0 +1,111 @@
+package com.rogaiopytov;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Выдаёт короткие обфусцированные имена: сначала все однобуквенные, потом
+// двухсимвольные и т.д. Имена состоят из [a-z][a-z0-9]* и уникальны без учёта
+// регистра, поэтому после adjustCase два разных идентификатора не могут
+// превратиться в одно и то же имя, а файлы классов не совпадут на
+// регистронезависимой файловой системе. Зарезервированные имена (ключевые
+// слова и всё, что уже встречается в исходниках) никогда не выдаются.
+// Порядок символов перемешивается по seed, так что при одинаковом seed и
+// одинаковых исходниках имена всегда одни и те же.
+public class NameAllocator {
+
+	private static final String[] KEYWORDS = { "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+			"const", "continue", "default", "do", "double", "else", "enum", "exports", "extends", "final", "finally", "float", "for",
+			"goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "module", "native", "new", "non",
+			"open", "opens", "package", "permits", "private", "protected", "provides", "public", "record", "requires", "return",
+			"sealed", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "to",
+			"transient", "transitive", "try", "uses", "var", "void", "volatile", "when", "while", "with", "yield", "true", "false",
+			"null" };
+
+	private final char[] letters;
+	private final char[] alphaNumerics;
+	private final Set<String> reserved = new HashSet<>();
+
+	private int length = 1;
+	private long index;
+
+	public NameAllocator(long seed) {
+		Random random = new Random(seed);
+		letters = shuffle("abcdefghijklmnopqrstuvwxyz", random);
+		alphaNumerics = shuffle("abcdefghijklmnopqrstuvwxyz0123456789", random);
+		for (String keyword : KEYWORDS) {
+			reserved.add(keyword);
+		}
+	}
+
+	// Запрещает выдавать name в любом регистре.
+	public void reserve(String name) {
+		reserved.add(name.toLowerCase());
+	}
+
+	public boolean isFree(String name) {
+		return !reserved.contains(name.toLowerCase());
+	}
+
+	// Следующее по длине свободное имя, сразу помечается занятым.
+	public String next() {
+		while (true) {
+			String name = nameAt(length, index);
+			index++;
+			if (index == capacity(length)) {
+				length++;
+				index = 0;
+			}
+			if (reserved.add(name)) {
+				return name;
+			}
+		}
+	}
+
+	// Выдаёт имена ключам по убыванию частоты использования: самые частые
+	// идентификаторы получают самые короткие имена. При равной частоте ключи
+	// упорядочены по алфавиту, чтобы результат не зависел от порядка обхода.
+	public Map<String, String> allocate(Map<String, Integer> usages) {
+		List<Map.Entry<String, Integer>> entries = new ArrayList<>(usages.entrySet());
+		entries.sort(Map.Entry.<String, Integer>comparingByValue(Collections.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+		Map<String, String> names = new LinkedHashMap<>();
+		for (Map.Entry<String, Integer> entry : entries) {
+			names.put(entry.getKey(), next());
+		}
+		return names;
+	}
+
+	private String nameAt(int length, long index) {
+		char[] name = new char[length];
+		for (int i = length - 1; i > 0; i--) {
+			name[i] = alphaNumerics[(int) (index % alphaNumerics.length)];
+			index /= alphaNumerics.length;
+		}
+		name[0] = letters[(int) index];
+		return new String(name);
+	}
+
+	private long capacity(int length) {
+		long capacity = letters.length;
+		for (int i = 1; i < length; i++) {
+			capacity *= alphaNumerics.length;
+		}
+		return capacity;
+	}
+
+	private static char[] shuffle(String alphabet, Random random) {
+		char[] chars = alphabet.toCharArray();
+		for (int i = chars.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			char tmp = chars[i];
+			chars[i] = chars[j];
+			chars[j] = tmp;
+		}
+		return chars;
+	}
+}
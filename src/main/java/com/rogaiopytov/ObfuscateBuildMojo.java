@@ -10,6 +10,8 @@ import static org.twdata.maven.mojoexecutor.MojoExecutor.groupId;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.plugin;
 import static org.twdata.maven.mojoexecutor.MojoExecutor.version;
 
+import java.io.File;
+
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
@@ -18,6 +20,7 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
@@ -33,8 +36,20 @@ public class ObfuscateBuildMojo extends AbstractMojo{
 	@Component
 	private BuildPluginManager pluginManager;
 
+	// source - обфускация исходников в obfs и их повторная компиляция;
+	// bytecode - одна компиляция и переименование прямо в скомпилированных классах.
+	@Parameter(property = "mode", defaultValue = "source")
+	private String mode;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
+		if ("bytecode".equals(mode)) {
+			executeBytecode();
+			return;
+		}
+		if (!"source".equals(mode)) {
+			throw new MojoExecutionException("Unknown obfuscation mode: " + mode + ". Expected 'source' or 'bytecode'.");
+		}
 		executeMojo(
 	            plugin(
 	                groupId("com.RogaIKopytov"),
@@ -59,4 +74,49 @@ public class ObfuscateBuildMojo extends AbstractMojo{
 	            executionEnvironment(project, session, pluginManager)
 	        );
 	}
+
+	private void executeBytecode() throws MojoExecutionException {
+		String buildDir = project.getBuild().getDirectory();
+		File classesDir = new File(buildDir, "obfs-classes");
+		File webDir = new File(buildDir, "obfs-web");
+
+		executeMojo(
+	            plugin(
+	                groupId("com.RogaIKopytov"),
+	                artifactId("rik-maven-plugin"),
+	                version("1.0")
+	            ),
+				goal("compile"),
+	            configuration(
+	            ),
+	            executionEnvironment(project, session, pluginManager)
+	        );
+		executeMojo(
+	            plugin(
+	                groupId("com.RogaIKopytov"),
+	                artifactId("rik-maven-plugin"),
+	                version("1.0")
+	            ),
+				goal("obfuscate-bytecode"),
+	            configuration(
+	            		element("obfuscatedClassesDirectory", classesDir.getAbsolutePath()),
+	            		element("obfuscatedWebDirectory", webDir.getAbsolutePath())
+	            ),
+	            executionEnvironment(project, session, pluginManager)
+	        );
+		executeMojo(
+	            plugin(
+	                groupId("com.RogaIKopytov"),
+	                artifactId("rik-maven-plugin"),
+	                version("1.0")
+	            ),
+				goal("build"),
+	            configuration(
+	            		element("src", project.getBasedir().toPath().relativize(webDir.toPath()).toString()),
+	            		element("skipCompile", "true"),
+	            		element("classesDirectory", classesDir.getAbsolutePath())
+	            ),
+	            executionEnvironment(project, session, pluginManager)
+	        );
+	}
 }
@@ -0,0 +1,171 @@
+package com.rogaiopytov;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+
+@Mojo(name = "obfuscate-bytecode", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true, requiresDependencyResolution = ResolutionScope.COMPILE)
+public class ObfuscateBytecodeMojo extends AbstractMojo {
+
+	private final String logPrefix = "Obfuscate Bytecode Goal";
+
+	// Текстовые файлы, в которых заменяются ссылки на классы
+	private static final Set<String> TEXT_EXTENSIONS = Set.of("xhtml", "xml", "jsp", "tld", "properties", "html");
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	@Parameter(property = "src", defaultValue = "src")
+	private String src;
+
+	@Parameter(property = "classesDirectory", defaultValue = "${project.build.outputDirectory}")
+	private String classesDirectory;
+
+	@Parameter(property = "obfuscatedClassesDirectory", defaultValue = "${project.build.directory}/obfs-classes")
+	private String obfuscatedClassesDirectory;
+
+	// Копия main/webapp и main/resources с заменёнными ссылками на классы,
+	// в том же формате, что и src, чтобы её можно было передать цели build.
+	@Parameter(property = "obfuscatedWebDirectory", defaultValue = "${project.build.directory}/obfs-web")
+	private String obfuscatedWebDirectory;
+
+	@Parameter(property = "threads", defaultValue = "1")
+	private int threads;
+
+	@Parameter(property = "seed", defaultValue = "0")
+	private long seed;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		Path classesDir = Paths.get(classesDirectory);
+		Path outputDir = Paths.get(obfuscatedClassesDirectory);
+		Path webDir = Paths.get(obfuscatedWebDirectory);
+		Path srcDir = project.getBasedir().toPath().resolve(src);
+
+		if (!Files.isDirectory(classesDir)) {
+			throw new MojoExecutionException(
+					String.format("%s: Classes directory does not exist, run the compile goal first: %s", logPrefix, classesDir));
+		}
+
+		BytecodeObfuscator obfuscator = new BytecodeObfuscator(seed);
+		try (ParallelExecutor executor = new ParallelExecutor(threads); URLClassLoader libraries = librariesLoader(classesDir)) {
+			FileUtils.deleteDirectory(outputDir.toFile());
+			FileUtils.deleteDirectory(webDir.toFile());
+
+			obfuscator.load(classesDir);
+			obfuscator.buildMappings(libraries);
+			if (!obfuscator.getUnresolvedLibraryClasses().isEmpty()) {
+				getLog().warn(String.format("%s: Superclasses not found on the compile classpath, their member names may clash: %s",
+						logPrefix, obfuscator.getUnresolvedLibraryClasses()));
+			}
+			obfuscator.write(outputDir, executor);
+			getLog().info(String.format("%s: Remapped %d classes into %s", logPrefix, obfuscator.getClassCount(), outputDir));
+
+			IdentifierReplacer classReplacer = new IdentifierReplacer(obfuscator.getSimpleClassMapping(), Collections.emptyMap());
+
+			// Ресурсы из target/classes копируются как есть, кроме META-INF
+			copyTree(classesDir, outputDir, path -> !path.toString().endsWith(".class"),
+					path -> path.startsWith("META-INF") ? classReplacer : null);
+			copyTree(srcDir.resolve("main/webapp"), webDir.resolve("main/webapp"), path -> true,
+					path -> path.startsWith("WEB-INF") || path.toString().endsWith(".xhtml") ? classReplacer : null);
+			copyTree(srcDir.resolve("main/resources"), webDir.resolve("main/resources"), path -> true, path -> null);
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error obfuscating classes", logPrefix), e);
+		}
+
+		writeMappings(obfuscator.getMappings(), new File(project.getBasedir(), "mappings.txt"));
+		File indexFile = new File(project.getBasedir(), "mappings.idx");
+		try {
+			MappingIndex.write(indexFile, obfuscator.getRetraceNames(), obfuscator.getPackages());
+		} catch (IOException e) {
+			getLog().error(String.format("%s: Error writing mapping index: %s", logPrefix, indexFile.getAbsolutePath()), e);
+		}
+	}
+
+	// Compile classpath без собственных классов проекта; классы JDK берутся из
+	// родительского загрузчика
+	private URLClassLoader librariesLoader(Path classesDir) throws IOException, MojoExecutionException {
+		List<URL> urls = new ArrayList<>();
+		try {
+			for (String element : project.getCompileClasspathElements()) {
+				Path path = Paths.get(element).toAbsolutePath().normalize();
+				if (!path.equals(classesDir.toAbsolutePath().normalize())) {
+					urls.add(path.toUri().toURL());
+				}
+			}
+		} catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException(String.format("%s: Compile classpath is not resolved", logPrefix), e);
+		}
+		return new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getPlatformClassLoader());
+	}
+
+	// Копирует дерево файлов, заменяя ссылки на классы в текстовых файлах, для
+	// которых replacerFor вернул не null.
+	private void copyTree(Path from, Path to, Predicate<Path> include,
+			Function<Path, IdentifierReplacer> replacerFor) throws IOException {
+		if (!Files.isDirectory(from)) {
+			return;
+		}
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(from)) {
+			files = walk.filter(Files::isRegularFile).map(from::relativize).filter(include).collect(Collectors.toList());
+		}
+		for (Path relative : files) {
+			Path source = from.resolve(relative);
+			Path target = to.resolve(relative);
+			Files.createDirectories(target.getParent());
+
+			IdentifierReplacer replacer = isText(relative) ? replacerFor.apply(relative) : null;
+			if (replacer == null) {
+				Files.copy(source, target);
+				continue;
+			}
+			String contents = new String(Files.readAllBytes(source), StandardCharsets.UTF_8);
+			Files.write(target, replacer.replace(contents).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private boolean isText(Path path) {
+		String name = path.getFileName().toString();
+		return TEXT_EXTENSIONS.contains(name.substring(name.lastIndexOf('.') + 1));
+	}
+
+	private void writeMappings(Map<String, String> mappings, File mappingFile) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Mappings:\n");
+		for (Map.Entry<String, String> entry : mappings.entrySet()) {
+			sb.append(entry.getKey()).append(" -> ").append(entry.getValue()).append("\n");
+		}
+
+		try {
+			FileUtils.fileWrite(mappingFile.getAbsolutePath(), StandardCharsets.UTF_8.name(), sb.toString());
+			getLog().info(String.format("%s: Mappings written to file: %s", logPrefix, mappingFile.getAbsolutePath()));
+		} catch (IOException e) {
+			getLog().error(String.format("%s: Error writing mappings to file: %s", logPrefix, mappingFile.getAbsolutePath()), e);
+		}
+	}
+}
@@ -2,14 +2,26 @@ package com.rogaiopytov;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -27,7 +39,27 @@ public class ObfuscateMojo extends AbstractMojo {
 	@Parameter(defaultValue = "${project}", readonly = true, required = true)
 	private MavenProject project;
 
-	private final Random random = new Random();
+	// Количество потоков для поиска маппингов, замены и переименования файлов.
+	// 1 - последовательный режим.
+	@Parameter(property = "threads", defaultValue = "1")
+	private int threads;
+
+	// Инкрементальный режим: маппинги и хеши файлов сохраняются в target/ между
+	// запусками, а в obfs обновляются только изменившиеся файлы.
+	@Parameter(property = "incremental", defaultValue = "false")
+	private boolean incremental;
+
+	// Seed для порядка символов в обфусцированных названиях. При одном и том же
+	// seed одинаковые исходники всегда дают одинаковые маппинги.
+	@Parameter(property = "seed", defaultValue = "0")
+	private long seed;
+
+	// Как в obfs попадают файлы, которые обфускация не меняет: copy - копия через
+	// FileChannel.transferTo, link - жёсткая ссылка на файл из src (с копией,
+	// если файловая система ссылки не поддерживает). Изменённые файлы всегда
+	// записываются заново, поэтому исходники через ссылку не портятся.
+	@Parameter(property = "staging", defaultValue = "copy")
+	private String staging;
 
 	// Fully-Qualified Mappings.
 	// Мап, хранящий полные названия классов и переменных.
@@ -46,30 +78,137 @@ public class ObfuscateMojo extends AbstractMojo {
 					String.format("%s: Source directory 'src' does not exist at %s.", logPrefix, srcDir.getAbsolutePath()));
 		}
 
-		try {
-			FileUtils.copyDirectoryStructure(srcDir, obfuscatedDir);
-		} catch (IOException e) {
-			throw new MojoExecutionException(String.format("%s: Failed to copy 'src' directory", logPrefix), e);
+		File ledgerFile = new File(project.getBuild().getDirectory(), "obfuscation-ledger.txt");
+
+		if (!"copy".equals(staging) && !"link".equals(staging)) {
+			throw new MojoExecutionException(
+					String.format("%s: Unknown staging '%s', expected 'copy' or 'link'", logPrefix, staging));
+		}
+
+		if (threads > 1) {
+			getLog().info(String.format("%s: Running in parallel mode with %d threads", logPrefix, threads));
 		}
+		try (ParallelExecutor executor = new ParallelExecutor(threads)) {
+			if (incremental) {
+				obfuscateIncrementally(baseDir, srcDir, obfuscatedDir, ledgerFile, executor);
+				return;
+			}
+
+			obfuscate(baseDir, srcDir, obfuscatedDir, executor);
 
-		fqMappings = generateMappings(obfuscatedDir);
+			// После полного прогона содержимое obfs больше не соответствует журналу
+			try {
+				Files.deleteIfExists(ledgerFile.toPath());
+			} catch (IOException e) {
+				getLog().warn(String.format("%s: Failed to delete stale ledger: %s", logPrefix, ledgerFile.getAbsolutePath()), e);
+			}
+		}
+	}
+
+	// Полный режим: obfs собирается заново из src. Содержимое каждого файла
+	// читается один раз, и на диск заново пишутся только файлы, в которых
+	// действительно что-то заменилось; остальные копируются или связываются
+	// ссылкой без разбора.
+	private void obfuscate(File baseDir, File srcDir, File obfuscatedDir, ParallelExecutor executor) throws MojoExecutionException {
+		fqMappings = generateMappings(srcDir, executor, Collections.emptyMap());
 		logMappings(fqMappings, new File(baseDir, "mappings.txt"));
+		writeMappingIndex(fqMappings, new File(baseDir, "mappings.idx"));
 
-		/*
-		 * Разделение маппингов названий классов от названий переменных. При замене
-		 * классов и полей логика немного отличается.
-		 */
 		Map<String, String> simpleMappingClass = new HashMap<>();
 		Map<String, String> simpleMappingField = new HashMap<>();
-		for (Map.Entry<String, String> entry : fqMappings.entrySet()) {
-			String fullyQualified = entry.getKey();
-			String simpleName = fullyQualified.substring(fullyQualified.lastIndexOf('.') + 1);
+		splitMappings(fqMappings, simpleMappingClass, simpleMappingField);
 
-			// Регулярка поиска полей по ошибке захватывает значения true/false, поэтому их
-			// просто пропускаю
-			if ("true".equalsIgnoreCase(simpleName) || "false".equalsIgnoreCase(simpleName)) {
-				continue;
+		// Названия классов заменяются без учёта регистра, полей - с учётом.
+		IdentifierReplacer classReplacer = new IdentifierReplacer(simpleMappingClass, Collections.emptyMap());
+		IdentifierReplacer identifierReplacer = new IdentifierReplacer(simpleMappingClass, simpleMappingField);
+
+		try {
+			FileUtils.deleteDirectory(obfuscatedDir);
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Failed to clear 'obfs' directory", logPrefix), e);
+		}
+
+		List<String> sources = listSources(srcDir);
+		AtomicInteger rewritten = new AtomicInteger();
+		AtomicInteger linked = new AtomicInteger();
+		executor.forEach(sources, relative -> {
+			File source = new File(srcDir, relative);
+			try {
+				Path target = obfuscatedDir.toPath().resolve(relative);
+				Files.createDirectories(target.getParent());
+				IdentifierReplacer replacer = replacerFor(relative, classReplacer, identifierReplacer);
+				if (replacer != null) {
+					String text = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+					String replaced = replacer.replace(text);
+					if (replaced != text) {
+						writeStaged(target, replaced.getBytes(StandardCharsets.UTF_8));
+						rewritten.incrementAndGet();
+						return;
+					}
+				}
+				if (stageUnchanged(source.toPath(), target)) {
+					linked.incrementAndGet();
+				}
+			} catch (IOException e) {
+				getLog().error(String.format("%s: Error staging file: %s", logPrefix, source.getAbsolutePath()), e);
 			}
+		});
+		getLog().info(String.format("%s: Staged %d files: %d rewritten, %d linked, %d copied", logPrefix, sources.size(),
+				rewritten.get(), linked.get(), sources.size() - rewritten.get() - linked.get()));
+
+		Map<String, Set<String>> renameIndex = buildRenameIndex(sources, simpleMappingClass.keySet());
+		renameMatchingFiles(obfuscatedDir, renameIndex, classReplacer);
+	}
+
+	// Файл в obfs всегда сначала удаляется: если это жёсткая ссылка, запись
+	// поверх неё изменила бы файл в src.
+	private void writeStaged(Path target, byte[] content) throws IOException {
+		Files.deleteIfExists(target);
+		Files.write(target, content, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+	}
+
+	// Переносит неизменённый файл в obfs. Возвращает true, если удалось
+	// обойтись жёсткой ссылкой.
+	private boolean stageUnchanged(Path source, Path target) throws IOException {
+		Files.deleteIfExists(target);
+		if ("link".equals(staging)) {
+			try {
+				Files.createLink(target, source);
+				return true;
+			} catch (UnsupportedOperationException | IOException e) {
+				// Например, src и obfs на разных файловых системах
+			}
+		}
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
+		}
+		return false;
+	}
+
+	// Пути всех файлов src относительно src, через '/', по порядку.
+	private List<String> listSources(File srcDir) throws MojoExecutionException {
+		try {
+			return SourceIndex.get(getPluginContext(), srcDir.toPath()).getFiles().stream().map(SourceIndex.Entry::getPath)
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error scanning 'src' directory", logPrefix), e);
+		}
+	}
+
+	/*
+	 * Разделение маппингов названий классов от названий переменных. При замене
+	 * классов и полей логика немного отличается.
+	 */
+	private void splitMappings(Map<String, String> mappings, Map<String, String> simpleMappingClass,
+			Map<String, String> simpleMappingField) {
+		for (Map.Entry<String, String> entry : mappings.entrySet()) {
+			String fullyQualified = entry.getKey();
+			String simpleName = fullyQualified.substring(fullyQualified.lastIndexOf('.') + 1);
 
 			String[] tokens = fullyQualified.split("\\.");
 			if (tokens.length >= 2) {
@@ -83,101 +222,249 @@ public class ObfuscateMojo extends AbstractMojo {
 				simpleMappingClass.put(simpleName, entry.getValue());
 			}
 		}
+	}
 
+	// Инкрементальный режим: obfs не пересоздаётся целиком. Имена берутся из
+	// журнала прошлого запуска, а копируются и переписываются только файлы,
+	// которые изменились сами или ссылаются на идентификаторы, чьи маппинги
+	// изменились.
+	private void obfuscateIncrementally(File baseDir, File srcDir, File obfuscatedDir, File ledgerFile, ParallelExecutor executor)
+			throws MojoExecutionException {
+		ObfuscationLedger previous;
 		try {
-			Collection<File> allFiles = new ArrayList<>(FileUtils.getFiles(obfuscatedDir, "**/*.java", null));
-			Collection<File> replaceClassFiles = new ArrayList<>();
-
-			File metaInfDir = new File(obfuscatedDir, "main/resources/META-INF");
-			File webAppDir = new File(obfuscatedDir, "main/webapp");
-//			File webInfDir = new File(obfuscatedDir, "/WEB-INF");
+			previous = ObfuscationLedger.load(ledgerFile);
+		} catch (IOException e) {
+			getLog().warn(String.format("%s: Ledger is unreadable, falling back to a full run: %s", logPrefix, e.getMessage()));
+			previous = new ObfuscationLedger();
+		}
 
-			if (metaInfDir.exists()) {
-				allFiles.addAll(FileUtils.getFiles(metaInfDir, "**/*", null));
-			}
-			if (webAppDir.exists()) {
-				replaceClassFiles.addAll(FileUtils.getFiles(webAppDir, "**/*.xhtml", null));
-				File webInfDir = new File(webAppDir, "WEB-INF");
-				if (webInfDir.exists()) {
-					allFiles.addAll(FileUtils.getFiles(webInfDir, "**/*", null));
-				}
+		// Без журнала неизвестно, какие файлы в obfs устарели
+		if (previous.isEmpty() && obfuscatedDir.exists()) {
+			try {
+				FileUtils.deleteDirectory(obfuscatedDir);
+			} catch (IOException e) {
+				throw new MojoExecutionException(String.format("%s: Failed to clear 'obfs' directory", logPrefix), e);
 			}
+		}
+
+		fqMappings = generateMappings(srcDir, executor, previous.getMappings());
+		logMappings(fqMappings, new File(baseDir, "mappings.txt"));
+		writeMappingIndex(fqMappings, new File(baseDir, "mappings.idx"));
 
-			for (File file : replaceClassFiles) {
-				replaceIdentifiersInFile(file, simpleMappingClass, false);
+		Map<String, String> simpleMappingClass = new HashMap<>();
+		Map<String, String> simpleMappingField = new HashMap<>();
+		splitMappings(fqMappings, simpleMappingClass, simpleMappingField);
+		Map<String, String> previousMappingClass = new HashMap<>();
+		Map<String, String> previousMappingField = new HashMap<>();
+		splitMappings(previous.getMappings(), previousMappingClass, previousMappingField);
+
+		IdentifierReplacer classReplacer = new IdentifierReplacer(simpleMappingClass, Collections.emptyMap());
+		IdentifierReplacer identifierReplacer = new IdentifierReplacer(simpleMappingClass, simpleMappingField);
+		// Находит файлы, которые не менялись, но ссылаются на добавленные, удалённые
+		// или переименованные идентификаторы
+		IdentifierReplacer changedReplacer = new IdentifierReplacer(changedMappings(previousMappingClass, simpleMappingClass),
+				changedMappings(previousMappingField, simpleMappingField));
+
+		List<String> sources = listSources(srcDir);
+
+		Map<String, ObfuscationLedger.FileRecord> previousFiles = previous.getFiles();
+		AtomicInteger updated = new AtomicInteger();
+		List<ObfuscationLedger.FileRecord> records = executor.map(sources,
+				relative -> stageIncrementally(relative, srcDir, obfuscatedDir, previousFiles.get(relative), classReplacer,
+						identifierReplacer, changedReplacer, updated));
+
+		ObfuscationLedger ledger = new ObfuscationLedger();
+		ledger.getMappings().putAll(fqMappings);
+		Set<String> outputs = new HashSet<>();
+		for (int i = 0; i < sources.size(); i++) {
+			ObfuscationLedger.FileRecord record = records.get(i);
+			if (record != null) {
+				ledger.getFiles().put(sources.get(i), record);
+				outputs.add(record.getOutput());
 			}
+		}
 
-			for (File file : allFiles) {
-				replaceIdentifiersInFile(file, simpleMappingClass, false);
-				replaceIdentifiersInFile(file, simpleMappingField, true);
+		int removed = 0;
+		for (ObfuscationLedger.FileRecord record : previousFiles.values()) {
+			if (!outputs.contains(record.getOutput()) && deleteStaleOutput(obfuscatedDir, record.getOutput())) {
+				removed++;
 			}
+		}
+
+		try {
+			ledger.save(ledgerFile);
 		} catch (IOException e) {
-			throw new MojoExecutionException(String.format("%s: Error scanning files for replacement", logPrefix), e);
+			getLog().error(String.format("%s: Error writing ledger: %s", logPrefix, ledgerFile.getAbsolutePath()), e);
 		}
+		getLog().info(String.format("%s: Incremental run: %d of %d files updated, %d stale files removed", logPrefix, updated.get(),
+				sources.size(), removed));
+	}
 
-		renameMatchingFiles(obfuscatedDir, simpleMappingClass, false);
+	// Обновляет обфусцированную копию одного файла, если это нужно, и возвращает
+	// новую запись для журнала (null при ошибке, тогда файл обновится в следующий раз).
+	private ObfuscationLedger.FileRecord stageIncrementally(String relative, File srcDir, File obfuscatedDir,
+			ObfuscationLedger.FileRecord record, IdentifierReplacer classReplacer, IdentifierReplacer identifierReplacer,
+			IdentifierReplacer changedReplacer, AtomicInteger updated) {
+		File source = new File(srcDir, relative);
+		try {
+			byte[] content = Files.readAllBytes(source.toPath());
+			String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(content));
+			String output = obfuscatedPath(relative, classReplacer);
+			File target = new File(obfuscatedDir, output);
+
+			IdentifierReplacer replacer = replacerFor(relative, classReplacer, identifierReplacer);
+			String text = replacer == null ? null : new String(content, StandardCharsets.UTF_8);
+
+			boolean dirty = record == null || !record.getHash().equals(hash) || !record.getOutput().equals(output) || !target.isFile()
+					|| (text != null && changedReplacer.matches(text));
+			if (dirty) {
+				Files.createDirectories(target.toPath().getParent());
+				String replaced = text == null ? null : replacer.replace(text);
+				if (replaced == null || replaced == text) {
+					stageUnchanged(source.toPath(), target.toPath());
+				} else {
+					writeStaged(target.toPath(), replaced.getBytes(StandardCharsets.UTF_8));
+				}
+				updated.incrementAndGet();
+			}
+			return new ObfuscationLedger.FileRecord(hash, output);
+		} catch (IOException | NoSuchAlgorithmException e) {
+			getLog().error(String.format("%s: Error processing file: %s", logPrefix, source.getAbsolutePath()), e);
+			return null;
+		}
 	}
 
-	// Сканирует все .java классы, чтобы найти все названия классов и переменных.
-	private Map<String, String> generateMappings(File sourceDir) throws MojoExecutionException {
-		Map<String, String> mappings = new HashMap<>();
+	// Те же правила, что и в полном режиме: классы и поля заменяются в .java,
+	// META-INF и WEB-INF, а в остальных .xhtml - только классы.
+	private IdentifierReplacer replacerFor(String relative, IdentifierReplacer classReplacer, IdentifierReplacer identifierReplacer) {
+		if (relative.endsWith(".java") || relative.startsWith("main/resources/META-INF/") || relative.startsWith("main/webapp/WEB-INF/")) {
+			return identifierReplacer;
+		}
+		if (relative.startsWith("main/webapp/") && relative.endsWith(".xhtml")) {
+			return classReplacer;
+		}
+		return null;
+	}
 
-		// Регулярка, чтобы найти полное название пакета
-		Pattern packagePattern = Pattern.compile("^\\s*package\\s+([a-zA-Z0-9_.]+)\\s*;", Pattern.MULTILINE);
+	// Путь файла в obfs: каждый элемент пути переименовывается так же, как это
+	// делает renameMatchingFiles.
+	private String obfuscatedPath(String relative, IdentifierReplacer classReplacer) {
+		String[] segments = relative.split("/");
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = classReplacer.replace(segments[i]);
+		}
+		return String.join("/", segments);
+	}
 
-		// Регулярка, чтобы найти название класса (не работает с вложенными классами!)
-		Pattern classPattern = Pattern.compile("\\bclass\\s+([A-Za-z][A-Za-z0-9_]*)\\b");
+	private Map<String, String> changedMappings(Map<String, String> before, Map<String, String> after) {
+		Map<String, String> changed = new HashMap<>();
+		for (Map.Entry<String, String> entry : before.entrySet()) {
+			if (!entry.getValue().equals(after.get(entry.getKey()))) {
+				changed.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<String, String> entry : after.entrySet()) {
+			if (!entry.getValue().equals(before.get(entry.getKey()))) {
+				changed.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return changed;
+	}
 
-		// Регулярка, чтобы найти название класса (не работает с множественным
-		// декларированием в одну строку)
-		Pattern fieldPattern = Pattern.compile("(?:\\b(public|protected|private|static|final|transient|volatile)\\s+)*"
-				+ "[A-Za-z0-9_<>\\$\\$]+\\s+([A-Za-z][A-Za-z0-9_]*)(\\s*(=|;))");
+	// Удаляет устаревшую копию и опустевшие после этого каталоги.
+	private boolean deleteStaleOutput(File obfuscatedDir, String output) {
+		File file = new File(obfuscatedDir, output);
+		if (!file.delete()) {
+			return false;
+		}
+		File parent = file.getParentFile();
+		while (parent != null && !parent.equals(obfuscatedDir)) {
+			String[] children = parent.list();
+			if (children == null || children.length > 0 || !parent.delete()) {
+				break;
+			}
+			parent = parent.getParentFile();
+		}
+		return true;
+	}
 
-		Collection<File> javaFiles;
+	// Сканирует все .java классы, чтобы найти все названия классов и переменных.
+	// Файлы разбираются параллельно, а маппинги собираются в порядке путей к
+	// файлам, так что результат не зависит от того, какой поток закончил первым.
+	// Названия из previous переиспользуются, новые генерируются только для
+	// появившихся классов и полей.
+	// Классы заменяются без учёта регистра, поля - по простому имени, поэтому
+	// название выдаётся одно на простое имя в нижнем регистре, а не на каждое
+	// полное название.
+	private Map<String, String> generateMappings(File sourceDir, ParallelExecutor executor, Map<String, String> previous)
+			throws MojoExecutionException {
+		List<File> javaFiles;
 		try {
-			javaFiles = FileUtils.getFiles(sourceDir, "**/*.java", null);
+			javaFiles = SourceIndex.get(getPluginContext(), sourceDir.toPath()).findFiles("**/*.java").stream().map(Path::toFile)
+					.collect(Collectors.toList());
 		} catch (IOException e) {
 			throw new MojoExecutionException(String.format("%s: Error reading Java source files", logPrefix), e);
 		}
+		javaFiles.sort(Comparator.comparing(File::getPath));
 
-		for (File javaFile : javaFiles) {
-			String fileContents;
-			try {
-				fileContents = FileUtils.fileRead(javaFile, StandardCharsets.UTF_8.name());
-			} catch (IOException e) {
-				getLog().error(String.format("%s: Error reading file: %s", logPrefix, javaFile.getAbsolutePath()), e);
-				continue;
-			}
+		List<JavaSymbolScanner> scanners = executor.map(javaFiles, this::scanFile);
 
-			String packageName = "";
-			Matcher packageMatcher = packagePattern.matcher(fileContents);
-			if (packageMatcher.find()) {
-				packageName = packageMatcher.group(1);
+		// Ни одно выданное название не должно совпасть с идентификатором, который
+		// уже есть в коде: он мог бы оказаться не переименованным классом или полем.
+		NameAllocator allocator = new NameAllocator(seed);
+		Map<String, Integer> identifierCounts = new HashMap<>();
+		for (JavaSymbolScanner scanner : scanners) {
+			scanner.getIdentifierCounts().forEach((name, count) -> identifierCounts.merge(name, count, Integer::sum));
+		}
+		identifierCounts.keySet().forEach(allocator::reserve);
+
+		Map<String, String> names = new HashMap<>();
+		Map<String, Integer> usages = new HashMap<>();
+		Set<String> counted = new HashSet<>();
+		for (JavaSymbolScanner scanner : scanners) {
+			for (String fullyQualified : scanner.getSymbols()) {
+				String simpleName = fullyQualified.substring(fullyQualified.lastIndexOf('.') + 1);
+				String key = simpleName.toLowerCase();
+				String obfuscated = previous.get(fullyQualified);
+				if (obfuscated != null && !names.containsKey(key) && allocator.isFree(obfuscated)) {
+					allocator.reserve(obfuscated);
+					names.put(key, obfuscated);
+				}
+				if (counted.add(simpleName)) {
+					usages.merge(key, identifierCounts.getOrDefault(simpleName, 0), Integer::sum);
+				}
 			}
+		}
+		usages.keySet().removeAll(names.keySet());
+		names.putAll(allocator.allocate(usages));
 
-			Matcher classMatcher = classPattern.matcher(fileContents);
-			while (classMatcher.find()) {
-				String className = classMatcher.group(1);
-				String fullyQualifiedClass = packageName.isEmpty() ? className : packageName + "." + className;
-				String obfuscatedClassName = generateObfuscatedName(className.length());
-				mappings.put(fullyQualifiedClass, obfuscatedClassName);
-
-				Matcher fieldMatcher = fieldPattern.matcher(fileContents);
-				while (fieldMatcher.find()) {
-					String fieldName = fieldMatcher.group(2);
-					String fullyQualifiedField = fullyQualifiedClass + "." + fieldName;
-					String obfuscatedFieldName = generateObfuscatedName(fieldName.length());
-					mappings.put(fullyQualifiedField, obfuscatedFieldName);
-				}
+		Map<String, String> mappings = new HashMap<>();
+		for (JavaSymbolScanner scanner : scanners) {
+			for (String fullyQualified : scanner.getSymbols()) {
+				String simpleName = fullyQualified.substring(fullyQualified.lastIndexOf('.') + 1);
+				mappings.put(fullyQualified, names.get(simpleName.toLowerCase()));
 			}
 		}
 		return mappings;
 	}
 
+	private JavaSymbolScanner scanFile(File javaFile) {
+		String fileContents;
+		try {
+			fileContents = FileUtils.fileRead(javaFile, StandardCharsets.UTF_8.name());
+		} catch (IOException e) {
+			getLog().error(String.format("%s: Error reading file: %s", logPrefix, javaFile.getAbsolutePath()), e);
+			fileContents = "";
+		}
+		JavaSymbolScanner scanner = new JavaSymbolScanner(fileContents);
+		scanner.scan();
+		return scanner;
+	}
+
 	private void logMappings(Map<String, String> mappings, File mappingFile) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Mappings:\n");
-		for (Map.Entry<String, String> entry : mappings.entrySet()) {
+		for (Map.Entry<String, String> entry : new TreeMap<>(mappings).entrySet()) {
 			sb.append(entry.getKey()).append(" -> ").append(entry.getValue()).append("\n");
 		}
 
@@ -189,140 +476,91 @@ public class ObfuscateMojo extends AbstractMojo {
 		}
 	}
 
-	// Заменяет все найденные классы и поля на их обфусцированные версии
-	private void replaceIdentifiersInFile(File file, Map<String, String> simpleMapping, boolean caseSensitive) {
-		String fileContents;
-		try {
-			fileContents = FileUtils.fileRead(file, StandardCharsets.UTF_8.name());
-		} catch (IOException e) {
-			getLog().error(String.format("%s: Error reading file for replacement: %s", logPrefix, file.getAbsolutePath()), e);
-			return;
-		}
-
-		for (Map.Entry<String, String> entry : simpleMapping.entrySet()) {
-			String original = entry.getKey();
-			if ("true".equalsIgnoreCase(original) || "false".equalsIgnoreCase(original)) {
-				continue;
+	// Индекс для rik:retrace. Ключ - название в том регистре, в котором оно
+	// попадает в код после adjustCase. Пакеты - ведущие сегменты, начинающиеся
+	// с маленькой буквы, по тому же правилу, что и в splitMappings.
+	private void writeMappingIndex(Map<String, String> mappings, File indexFile) {
+		Map<String, String> names = new TreeMap<>();
+		Set<String> packages = new HashSet<>();
+		for (Map.Entry<String, String> entry : new TreeMap<>(mappings).entrySet()) {
+			String[] tokens = entry.getKey().split("\\.");
+			String simpleName = tokens[tokens.length - 1];
+			names.putIfAbsent(IdentifierReplacer.adjustCase(entry.getValue(), simpleName), simpleName);
+
+			int packageLength = 0;
+			while (packageLength < tokens.length - 1 && Character.isLowerCase(tokens[packageLength].charAt(0))) {
+				packageLength++;
 			}
-			String obfuscated = entry.getValue();
-			int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
-			Pattern pattern = Pattern.compile("(?<![@A-Za-z0-9_])(" + Pattern.quote(original) + ")(?![A-Za-z0-9_])", flags);
-			Matcher matcher = pattern.matcher(fileContents);
-
-			StringBuffer sb = new StringBuffer();
-			while (matcher.find()) {
-				String matchedText = matcher.group(1);
-				String replacement = adjustCase(obfuscated, matchedText);
-				matcher.appendReplacement(sb, replacement);
+			if (packageLength > 0) {
+				packages.add(String.join(".", Arrays.copyOf(tokens, packageLength)));
 			}
-			matcher.appendTail(sb);
-			fileContents = sb.toString();
 		}
 
 		try {
-			FileUtils.fileWrite(file.getAbsolutePath(), StandardCharsets.UTF_8.name(), fileContents);
+			MappingIndex.write(indexFile, names, packages);
 		} catch (IOException e) {
-			getLog().error(String.format("%s: Error writing file after replacement: %s", logPrefix, file.getAbsolutePath()), e);
+			getLog().error(String.format("%s: Error writing mapping index: %s", logPrefix, indexFile.getAbsolutePath()), e);
 		}
 	}
 
-	// Переименовывает файлы в соответсвии с обфусцированными названиями классов.
-	private void renameMatchingFiles(File file, Map<String, String> simpleMapping, boolean caseSensitive) {
-		if (file.isDirectory()) {
-			File[] children = file.listFiles();
-			if (children != null) {
-				for (File child : children) {
-					renameMatchingFiles(child, simpleMapping, caseSensitive);
+	// Индекс для переименования: простое название класса в нижнем регистре ->
+	// пути (файлы и каталоги), в названии которых оно встречается как отдельное
+	// слово. Строится по уже известному списку файлов, без обхода obfs.
+	private Map<String, Set<String>> buildRenameIndex(List<String> sources, Set<String> classNames) {
+		Set<String> keys = new HashSet<>();
+		for (String className : classNames) {
+			keys.add(className.toLowerCase());
+		}
+
+		Map<String, Set<String>> index = new HashMap<>();
+		Set<String> seen = new HashSet<>();
+		for (String relative : sources) {
+			int end = relative.length();
+			// Каждый каталог пути проверяется один раз, сколько бы файлов в нём ни было
+			while (end > 0 && seen.add(relative.substring(0, end))) {
+				int start = relative.lastIndexOf('/', end - 1) + 1;
+				String path = relative.substring(0, end);
+				String name = relative.substring(start, end);
+				for (String token : name.split("[^A-Za-z0-9_]+")) {
+					String key = token.toLowerCase();
+					if (keys.contains(key)) {
+						index.computeIfAbsent(key, k -> new HashSet<>()).add(path);
+					}
 				}
+				end = start - 1;
 			}
 		}
+		return index;
+	}
 
-		String originalName = file.getName();
-		String newName = originalName;
-
-		for (Map.Entry<String, String> entry : simpleMapping.entrySet()) {
-			String key = entry.getKey();
-			if ("true".equalsIgnoreCase(key) || "false".equalsIgnoreCase(key)) {
+	// Переименовывает файлы в соответсвии с обфусцированными названиями классов.
+	// Все пути из индекса переименовываются одним пакетом: сначала самые
+	// глубокие, чтобы путь к файлу был ещё действителен, когда до него дойдёт
+	// очередь, а каталоги переименовывались уже после своего содержимого.
+	private void renameMatchingFiles(File root, Map<String, Set<String>> renameIndex, IdentifierReplacer classReplacer) {
+		long started = System.nanoTime();
+		Set<String> paths = new HashSet<>();
+		renameIndex.values().forEach(paths::addAll);
+
+		List<String> batch = new ArrayList<>(paths);
+		batch.sort(Comparator.comparingInt((String path) -> path.split("/").length).reversed().thenComparing(Comparator.naturalOrder()));
+
+		int renamed = 0;
+		for (String path : batch) {
+			File file = new File(root, path);
+			String newName = classReplacer.replace(file.getName());
+			if (newName.equals(file.getName())) {
 				continue;
 			}
-			String obfuscated = entry.getValue();
-			int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE;
-			Pattern pattern = Pattern.compile("(?<![@A-Za-z0-9_])(" + Pattern.quote(key) + ")(?![A-Za-z0-9_])", flags);
-			Matcher matcher = pattern.matcher(newName);
-			StringBuffer sb = new StringBuffer();
-			boolean found = false;
-			while (matcher.find()) {
-				found = true;
-				String matchedText = matcher.group(1);
-				String replacement = adjustCase(obfuscated, matchedText);
-				matcher.appendReplacement(sb, replacement);
-			}
-			if (found) {
-				matcher.appendTail(sb);
-				newName = sb.toString();
-			}
-		}
-
-		if (!newName.equals(originalName)) {
 			File newFile = new File(file.getParent(), newName);
-			boolean renamed = file.renameTo(newFile);
-			if (renamed) {
-				getLog().info(String.format("%s: Renamed: %s -> %s", logPrefix, file.getAbsolutePath(), newFile.getAbsolutePath()));
+			if (file.renameTo(newFile)) {
+				renamed++;
+				getLog().debug(String.format("%s: Renamed: %s -> %s", logPrefix, file.getAbsolutePath(), newFile.getAbsolutePath()));
 			} else {
 				getLog().error(String.format("%s: Failed to rename: %s", logPrefix, file.getAbsolutePath()));
 			}
 		}
-	}
-
-	// Делает так, что обфусцированное название классов всегда начинается с большой
-	// буквы, а переменных - с маленькой.
-	private String adjustCase(String obfuscated, String original) {
-		if (original.equals(original.toUpperCase())) {
-			return obfuscated.toUpperCase();
-		} else if (original.equals(original.toLowerCase())) {
-			return obfuscated.toLowerCase();
-		} else if (Character.isUpperCase(original.charAt(0))) {
-			if (!obfuscated.isEmpty()) {
-				return Character.toUpperCase(obfuscated.charAt(0)) + obfuscated.substring(1);
-			}
-		} else if (Character.isLowerCase(original.charAt(0))) {
-			if (!obfuscated.isEmpty()) {
-				return Character.toLowerCase(obfuscated.charAt(0)) + obfuscated.substring(1);
-			}
-		}
-		return obfuscated;
-	}
-
-	// Генерирует обфусцированные названия.
-	// Названия классов и переменных всегда начинаются с буквы.
-	private String generateObfuscatedName(int length) {
-		if (length < 1) {
-			throw new IllegalArgumentException("Length must be at least 1.");
-		}
-		StringBuilder sb = new StringBuilder(length);
-		char firstChar = randomLetter();
-		sb.append(firstChar);
-		for (int i = 1; i < length; i++) {
-			sb.append(randomAlphaNumeric());
-		}
-		return sb.toString();
-	}
-
-	private char randomLetter() {
-		boolean upper = random.nextBoolean();
-		if (upper) {
-			return (char) ('A' + random.nextInt(26));
-		} else {
-			return (char) ('a' + random.nextInt(26));
-		}
-	}
-
-	private char randomAlphaNumeric() {
-		int choice = random.nextInt(36);
-		if (choice < 26) {
-			return random.nextBoolean() ? (char) ('A' + choice) : (char) ('a' + choice);
-		} else {
-			return (char) ('0' + (choice - 26));
-		}
+		getLog().info(String.format("%s: Renamed %d files and directories in %d ms", logPrefix, renamed,
+				(System.nanoTime() - started) / 1_000_000));
 	}
 }
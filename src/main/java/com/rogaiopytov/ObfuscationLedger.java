@@ -0,0 +1,99 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Состояние инкрементальной обфускации между запусками: таблица маппингов и
+// хеши исходных файлов вместе с путями их обфусцированных копий.
+// Хранится в текстовом виде, по одной записи на строку:
+// M <полное название> <обфусцированное название>
+// F <путь в src> <хеш содержимого> <путь в obfs>
+public class ObfuscationLedger {
+
+	private static final String HEADER = "# rik obfuscation ledger v1";
+
+	private final Map<String, String> mappings = new TreeMap<>();
+	private final Map<String, FileRecord> files = new TreeMap<>();
+
+	public static ObfuscationLedger load(File file) throws IOException {
+		ObfuscationLedger ledger = new ObfuscationLedger();
+		if (!file.isFile()) {
+			return ledger;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (!HEADER.equals(line)) {
+				throw new IOException("Unknown ledger format: " + file.getAbsolutePath());
+			}
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] parts = line.split("\t", -1);
+				if ("M".equals(parts[0]) && parts.length == 3) {
+					ledger.mappings.put(parts[1], parts[2]);
+				} else if ("F".equals(parts[0]) && parts.length == 4) {
+					ledger.files.put(parts[1], new FileRecord(parts[2], parts[3]));
+				} else {
+					throw new IOException("Malformed ledger line in " + file.getAbsolutePath() + ": " + line);
+				}
+			}
+		}
+		return ledger;
+	}
+
+	public void save(File file) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Map.Entry<String, String> entry : mappings.entrySet()) {
+				writer.write("M\t" + entry.getKey() + "\t" + entry.getValue());
+				writer.newLine();
+			}
+			for (Map.Entry<String, FileRecord> entry : files.entrySet()) {
+				writer.write("F\t" + entry.getKey() + "\t" + entry.getValue().getHash() + "\t" + entry.getValue().getOutput());
+				writer.newLine();
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return mappings.isEmpty() && files.isEmpty();
+	}
+
+	public Map<String, String> getMappings() {
+		return mappings;
+	}
+
+	public Map<String, FileRecord> getFiles() {
+		return files;
+	}
+
+	public static class FileRecord {
+		private final String hash;
+		private final String output;
+
+		public FileRecord(String hash, String output) {
+			this.hash = hash;
+			this.output = output;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public String getOutput() {
+			return output;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.rogaiopytov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Обёртка над ForkJoinPool для распараллеливания обработки файлов.
+// При threads <= 1 всё выполняется в вызывающем потоке, как раньше.
+// Результаты map() всегда идут в порядке входной коллекции, поэтому
+// итог не зависит от планирования потоков.
+public class ParallelExecutor implements AutoCloseable {
+
+	private final ForkJoinPool pool;
+
+	public ParallelExecutor(int threads) {
+		this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	public boolean isParallel() {
+		return pool != null;
+	}
+
+	public <T, R> List<R> map(Collection<T> items, Function<? super T, ? extends R> mapper) {
+		List<T> list = new ArrayList<>(items);
+		if (pool == null) {
+			return list.stream().map(mapper).collect(Collectors.toList());
+		}
+		// Параллельный стрим, запущенный из задачи пула, работает в этом же пуле
+		// (work-stealing), а не в общем ForkJoinPool.commonPool().
+		return pool.submit(() -> list.parallelStream().map(mapper).collect(Collectors.<R>toList())).join();
+	}
+
+	public <T> void forEach(Collection<T> items, Consumer<? super T> action) {
+		List<T> list = new ArrayList<>(items);
+		if (pool == null) {
+			list.forEach(action);
+			return;
+		}
+		pool.submit(() -> list.parallelStream().forEach(action)).join();
+	}
+
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+}
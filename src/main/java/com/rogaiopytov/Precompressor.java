@@ -0,0 +1,116 @@
+package com.rogaiopytov;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// Готовит .gz-варианты статических файлов, чтобы контейнер отдавал их без
+// сжатия на каждый запрос (в Tomcat - параметр precompressed у DefaultServlet).
+// В целевой каталог пишутся только .gz-файлы с теми же относительными путями,
+// исходники не трогаются. Файл пропускается, если сжатие экономит меньше 10%.
+// Заголовок gzip из java.util.zip не содержит времени, так что результат
+// зависит только от содержимого файла.
+public class Precompressor {
+
+	private static final Set<String> EXTENSIONS = Set.of("html", "htm", "css", "js", "mjs", "json", "map", "svg", "xml", "txt",
+			"webmanifest", "ico", "ttf", "otf", "eot");
+	private static final int MIN_SIZE = 256;
+	private static final double MAX_RATIO = 0.9;
+
+	private final ParallelExecutor executor;
+	private final AtomicInteger compressed = new AtomicInteger();
+	private final AtomicInteger skipped = new AtomicInteger();
+	private final AtomicLong originalBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	public Precompressor(ParallelExecutor executor) {
+		this.executor = executor;
+	}
+
+	// source/a/x.css -> target/a/x.css.gz. WEB-INF и META-INF не отдаются
+	// клиентам и не сжимаются.
+	public void compressTree(Path source, Path target) throws IOException {
+		if (!Files.isDirectory(source)) {
+			return;
+		}
+		List<Path> files;
+		try (Stream<Path> stream = Files.walk(source)) {
+			files = stream.filter(Files::isRegularFile).filter(file -> isCompressible(source.relativize(file)))
+					.collect(Collectors.toList());
+		}
+		try {
+			executor.forEach(files, file -> {
+				try {
+					compress(file, target.resolve(source.relativize(file).toString() + ".gz"));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public int getCompressed() {
+		return compressed.get();
+	}
+
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	// Размер исходных файлов, для которых записан .gz
+	public long getOriginalBytes() {
+		return originalBytes.get();
+	}
+
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	private void compress(Path file, Path gz) throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		// Уже лежащий рядом .gz не перезаписывается
+		if (data.length < MIN_SIZE || Files.exists(file.resolveSibling(file.getFileName() + ".gz"))) {
+			skipped.incrementAndGet();
+			return;
+		}
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 2);
+		try (GZIPOutputStream out = new GZIPOutputStream(buffer) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			out.write(data);
+		}
+		if (buffer.size() > data.length * MAX_RATIO) {
+			skipped.incrementAndGet();
+			return;
+		}
+		Files.createDirectories(gz.getParent());
+		Files.write(gz, buffer.toByteArray());
+		Files.setLastModifiedTime(gz, Files.getLastModifiedTime(file));
+		compressed.incrementAndGet();
+		originalBytes.addAndGet(data.length);
+		compressedBytes.addAndGet(buffer.size());
+	}
+
+	private static boolean isCompressible(Path relative) {
+		String path = relative.toString().replace('\\', '/');
+		if (path.startsWith("WEB-INF/") || path.startsWith("META-INF/")) {
+			return false;
+		}
+		int dot = path.lastIndexOf('.');
+		return dot > path.lastIndexOf('/') && EXTENSIONS.contains(path.substring(dot + 1).toLowerCase());
+	}
+}
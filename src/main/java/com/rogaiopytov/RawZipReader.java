@@ -0,0 +1,188 @@
+package com.rogaiopytov;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+// Чтение записей zip-архива без распаковки: центральный каталог разбирается
+// вручную, а данные записи отдаются в том виде, в каком лежат в архиве
+// (сырой deflate-поток), чтобы ZipWriter мог переписать их в новый архив как
+// есть. Чтение по позиции FileChannel, поэтому readRaw можно вызывать из
+// нескольких потоков. Зашифрованные записи и методы, кроме STORED и DEFLATED,
+// не поддерживаются - их read не возвращает.
+public class RawZipReader implements AutoCloseable {
+
+	private static final long LIMIT = 0xFFFFFFFFL;
+
+	public static final class Entry {
+
+		private final int method;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final long headerOffset;
+
+		private Entry(int method, long crc, long compressedSize, long size, long headerOffset) {
+			this.method = method;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.headerOffset = headerOffset;
+		}
+
+		public int getMethod() {
+			return method;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+	private final FileChannel channel;
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	public RawZipReader(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			readCentralDirectory();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException("Malformed zip archive: " + file, e);
+		}
+	}
+
+	public Entry get(String name) {
+		return entries.get(name);
+	}
+
+	// Данные записи без локального заголовка
+	public byte[] readRaw(Entry entry) throws IOException {
+		ByteBuffer header = read(entry.headerOffset, 30);
+		if (header.getInt(0) != 0x04034b50) {
+			throw new IOException("Bad local header at offset " + entry.headerOffset);
+		}
+		long dataOffset = entry.headerOffset + 30 + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+		return read(dataOffset, Math.toIntExact(entry.compressedSize)).array();
+	}
+
+	// Распакованное содержимое записи
+	public byte[] readContent(Entry entry) throws IOException {
+		byte[] raw = readRaw(entry);
+		if (entry.method == ZipEntry.STORED) {
+			return raw;
+		}
+		Inflater inflater = new Inflater(true);
+		try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(raw), inflater)) {
+			return in.readAllBytes();
+		} finally {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long size = channel.size();
+		// Конец центрального каталога: 22 байта и комментарий до 64 КБ
+		int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+		ByteBuffer tail = read(size - tailLength, tailLength);
+		int end = -1;
+		for (int i = tailLength - 22; i >= 0; i--) {
+			if (tail.getInt(i) == 0x06054b50) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0) {
+			throw new IOException("End of central directory not found");
+		}
+		long count = Short.toUnsignedInt(tail.getShort(end + 10));
+		long centralSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+		long centralOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+		if (end >= 20 && tail.getInt(end - 20) == 0x07064b50) {
+			ByteBuffer zip64 = read(tail.getLong(end - 20 + 8), 56);
+			if (zip64.getInt(0) != 0x06064b50) {
+				throw new IOException("Bad ZIP64 end of central directory");
+			}
+			count = zip64.getLong(32);
+			centralSize = zip64.getLong(40);
+			centralOffset = zip64.getLong(48);
+		}
+
+		ByteBuffer central = read(centralOffset, Math.toIntExact(centralSize));
+		int position = 0;
+		for (long i = 0; i < count; i++) {
+			if (central.getInt(position) != 0x02014b50) {
+				throw new IOException("Bad central directory entry at offset " + (centralOffset + position));
+			}
+			int flags = Short.toUnsignedInt(central.getShort(position + 8));
+			int method = Short.toUnsignedInt(central.getShort(position + 10));
+			long crc = Integer.toUnsignedLong(central.getInt(position + 16));
+			long compressedSize = Integer.toUnsignedLong(central.getInt(position + 20));
+			long entrySize = Integer.toUnsignedLong(central.getInt(position + 24));
+			int nameLength = Short.toUnsignedInt(central.getShort(position + 28));
+			int extraLength = Short.toUnsignedInt(central.getShort(position + 30));
+			int commentLength = Short.toUnsignedInt(central.getShort(position + 32));
+			long headerOffset = Integer.toUnsignedLong(central.getInt(position + 42));
+			byte[] name = new byte[nameLength];
+			central.get(position + 46, name);
+
+			// Поля 0xFFFFFFFF заменяются значениями из ZIP64 extra в фиксированном порядке
+			int extra = position + 46 + nameLength;
+			int extraEnd = extra + extraLength;
+			while (extra + 4 <= extraEnd) {
+				int id = Short.toUnsignedInt(central.getShort(extra));
+				int length = Short.toUnsignedInt(central.getShort(extra + 2));
+				if (id == 0x0001) {
+					int field = extra + 4;
+					if (entrySize == LIMIT) {
+						entrySize = central.getLong(field);
+						field += 8;
+					}
+					if (compressedSize == LIMIT) {
+						compressedSize = central.getLong(field);
+						field += 8;
+					}
+					if (headerOffset == LIMIT) {
+						headerOffset = central.getLong(field);
+					}
+				}
+				extra += 4 + length;
+			}
+
+			if ((flags & 1) == 0 && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)) {
+				// Бит 11 - имя в UTF-8; java.util.zip и без него читает имена как UTF-8
+				entries.put(new String(name, StandardCharsets.UTF_8), new Entry(method, crc, compressedSize, entrySize, headerOffset));
+			}
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of zip archive");
+			}
+		}
+		return buffer;
+	}
+}
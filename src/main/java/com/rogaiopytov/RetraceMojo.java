@@ -0,0 +1,157 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+// Восстанавливает исходные имена классов и членов в логах и стектрейсах
+// обфусцированного приложения по индексу mappings.idx. Файл читается построчно,
+// так что размер лога на потребление памяти не влияет.
+@Mojo(name = "retrace", threadSafe = true)
+public class RetraceMojo extends AbstractMojo {
+
+	private final String logPrefix = "Retrace Goal";
+
+	@Parameter(property = "input", required = true)
+	private File input;
+
+	// По умолчанию рядом с input с суффиксом .retraced
+	@Parameter(property = "output")
+	private File output;
+
+	@Parameter(property = "mappingIndex", defaultValue = "${project.basedir}/mappings.idx")
+	private File mappingIndex;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		if (!input.isFile()) {
+			throw new MojoExecutionException(String.format("%s: Input file does not exist: %s", logPrefix, input.getAbsolutePath()));
+		}
+		if (!mappingIndex.isFile()) {
+			throw new MojoExecutionException(String.format("%s: Mapping index does not exist, run an obfuscation goal first: %s",
+					logPrefix, mappingIndex.getAbsolutePath()));
+		}
+		File target = output != null ? output : new File(input.getPath() + ".retraced");
+
+		long started = System.nanoTime();
+		long lines = 0;
+		long replaced = 0;
+		try (MappingIndex index = MappingIndex.open(mappingIndex);
+				BufferedReader reader = Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8);
+				BufferedWriter writer = Files.newBufferedWriter(target.toPath(), StandardCharsets.UTF_8)) {
+			StringBuilder sb = new StringBuilder();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				sb.setLength(0);
+				replaced += retraceLine(line, index, sb);
+				writer.append(sb);
+				writer.newLine();
+				lines++;
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error retracing file: %s", logPrefix, input.getAbsolutePath()), e);
+		}
+
+		getLog().info(String.format("%s: Retraced %d names in %d lines in %d ms: %s", logPrefix, replaced, lines,
+				(System.nanoTime() - started) / 1_000_000, target.getAbsolutePath()));
+	}
+
+	// Заменяются только имена внутри цепочек через точку, которые начинаются с
+	// пакета проекта (com.example.A.b), и имя файла в "(A.java:12)" сразу после
+	// такой цепочки. Так короткие обфусцированные имена не путаются с обычными
+	// словами и с классами JDK.
+	private int retraceLine(String line, MappingIndex index, StringBuilder sb) {
+		int replaced = 0;
+		int length = line.length();
+		boolean previousInProject = false;
+		int i = 0;
+		while (i < length) {
+			if (!isNameChar(line.charAt(i))) {
+				sb.append(line.charAt(i));
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && (isNameChar(line.charAt(i)) || isSeparator(line.charAt(i)))) {
+				i++;
+			}
+			// Разделитель в конце цепочки ("Foo." в конце предложения) к ней не относится
+			int end = i;
+			while (end > start && isSeparator(line.charAt(end - 1))) {
+				end--;
+			}
+
+			int packageEnd = projectPackageEnd(line, start, end, index);
+			int firstSeparator = nextSeparator(line, start, end);
+			boolean fileName = previousInProject && end == firstSeparator + 5 && line.startsWith(".java", firstSeparator);
+			if (packageEnd < 0 && !fileName) {
+				sb.append(line, start, i);
+				previousInProject = false;
+				continue;
+			}
+
+			int from = packageEnd < 0 ? start : packageEnd;
+			sb.append(line, start, from);
+			while (from < end) {
+				int to = nextSeparator(line, from, end);
+				String original = to > from ? index.lookup(line, from, to) : null;
+				if (original != null && !original.isEmpty()) {
+					sb.append(original);
+					replaced++;
+				} else {
+					sb.append(line, from, to);
+				}
+				if (fileName && packageEnd < 0) {
+					// В "A.java" заменяется только имя класса
+					sb.append(line, to, end);
+					break;
+				}
+				if (to < end) {
+					sb.append(line.charAt(to));
+				}
+				from = to + 1;
+			}
+			sb.append(line, end, i);
+			previousInProject = packageEnd >= 0;
+		}
+		return replaced;
+	}
+
+	// Конец самого длинного префикса-пакета проекта в цепочке (позиция после
+	// точки) или -1, если цепочка не из проекта.
+	private int projectPackageEnd(String line, int start, int end, MappingIndex index) {
+		int found = -1;
+		int dot = line.indexOf('.', start);
+		while (dot > 0 && dot < end) {
+			if ("".equals(index.lookup(line, start, dot))) {
+				found = dot + 1;
+			}
+			dot = line.indexOf('.', dot + 1);
+		}
+		return found;
+	}
+
+	private int nextSeparator(String line, int from, int end) {
+		int i = from;
+		while (i < end && !isSeparator(line.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private boolean isNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+
+	private boolean isSeparator(char c) {
+		return c == '.' || c == '$';
+	}
+}
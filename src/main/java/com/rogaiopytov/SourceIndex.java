@@ -0,0 +1,295 @@
+package com.rogaiopytov;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Индекс дерева файлов, общий для целей плагина в рамках одной сборки: хранится
+// в контексте плагина (getPluginContext()), так что compile, hash, obfuscate и
+// n2a не обходят одни и те же каталоги заново. Каталоги одного уровня читаются
+// параллельно. При повторном обращении каталог перечитывается, только если
+// изменилось его время изменения (появился, удалён или переименован файл);
+// у остальных файлов заново читаются только размер и время изменения.
+// Символические ссылки на каталоги не обходятся, как и в Files.walk.
+public class SourceIndex {
+
+	private static final String CONTEXT_KEY = SourceIndex.class.getName();
+	private static final int WALK_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+	// Каталог, изменённый меньше чем за 2 секунды до чтения, перечитывается и в
+	// следующий раз: файл мог появиться в нём в ту же единицу времени ФС
+	private static final long RACY_INTERVAL = 2000;
+	private static final Map<String, Pattern> GLOBS = new ConcurrentHashMap<>();
+
+	public static final class Entry {
+
+		private final Path file;
+		private final String path;
+		private final long size;
+		private final long lastModified;
+		private final boolean directory;
+
+		private Entry(Path file, String path, BasicFileAttributes attributes) {
+			this.file = file;
+			this.path = path;
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+			this.directory = attributes.isDirectory();
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		// Путь относительно корня индекса через '/'
+		public String getPath() {
+			return path;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public boolean isDirectory() {
+			return directory;
+		}
+	}
+
+	private static final class Directory {
+
+		private final long lastModified;
+		private final long scanned;
+		private final List<Entry> children;
+
+		private Directory(long lastModified, long scanned, List<Entry> children) {
+			this.lastModified = lastModified;
+			this.scanned = scanned;
+			this.children = children;
+		}
+	}
+
+	private final Path root;
+	// Относительный путь каталога ("" - корень) -> содержимое
+	private Map<String, Directory> directories = new HashMap<>();
+	// Все файлы по порядку путей
+	private List<Entry> files = Collections.emptyList();
+	private final AtomicInteger listed = new AtomicInteger();
+	private final AtomicInteger reused = new AtomicInteger();
+
+	public SourceIndex(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+	}
+
+	// Индекс каталога из контекста плагина, обновлённый перед возвратом. Без
+	// контекста (цель запущена не из Maven) каждый раз строится новый индекс.
+	@SuppressWarnings("unchecked")
+	public static SourceIndex get(Map<?, ?> pluginContext, Path root) throws IOException {
+		SourceIndex index;
+		if (pluginContext == null) {
+			index = new SourceIndex(root);
+		} else {
+			synchronized (pluginContext) {
+				Map<Object, Object> context = (Map<Object, Object>) pluginContext;
+				Map<Path, SourceIndex> indexes = (Map<Path, SourceIndex>) context.computeIfAbsent(CONTEXT_KEY,
+						key -> new HashMap<Path, SourceIndex>());
+				index = indexes.computeIfAbsent(root.toAbsolutePath().normalize(), SourceIndex::new);
+			}
+		}
+		index.refresh();
+		return index;
+	}
+
+	// Убирает из контекста индексы каталогов внутри directory, например после
+	// его удаления
+	@SuppressWarnings("unchecked")
+	public static void invalidate(Map<?, ?> pluginContext, Path directory) {
+		if (pluginContext == null) {
+			return;
+		}
+		Path normalized = directory.toAbsolutePath().normalize();
+		synchronized (pluginContext) {
+			Map<Path, SourceIndex> indexes = (Map<Path, SourceIndex>) pluginContext.get(CONTEXT_KEY);
+			if (indexes != null) {
+				indexes.keySet().removeIf(path -> path.startsWith(normalized));
+			}
+		}
+	}
+
+	public synchronized void refresh() throws IOException {
+		listed.set(0);
+		reused.set(0);
+		Map<String, Directory> scanned = new HashMap<>();
+		List<Entry> found = new ArrayList<>();
+		List<String> level = List.of("");
+		try (ParallelExecutor executor = new ParallelExecutor(WALK_THREADS)) {
+			while (!level.isEmpty()) {
+				List<Directory> results = executor.map(level, this::scan);
+				List<String> next = new ArrayList<>();
+				for (int i = 0; i < level.size(); i++) {
+					Directory directory = results.get(i);
+					if (directory == null) {
+						continue;
+					}
+					scanned.put(level.get(i), directory);
+					for (Entry child : directory.children) {
+						if (child.directory) {
+							next.add(child.path);
+						} else {
+							found.add(child);
+						}
+					}
+				}
+				level = next;
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		found.sort((a, b) -> a.path.compareTo(b.path));
+		directories = scanned;
+		files = Collections.unmodifiableList(found);
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	public synchronized List<Entry> getFiles() {
+		return files;
+	}
+
+	// Файлы, путь которых подходит под шаблон: '*' и '?' не выходят за пределы
+	// имени, "**" - любое число каталогов ("**/*.java" находит и A.java в корне),
+	// {a,b} - варианты. Результат упорядочен по путям.
+	public synchronized List<Entry> find(String glob) {
+		Pattern pattern = GLOBS.computeIfAbsent(glob, SourceIndex::compile);
+		return files.stream().filter(entry -> pattern.matcher(entry.path).matches()).collect(Collectors.toList());
+	}
+
+	public synchronized List<Path> findFiles(String glob) {
+		return find(glob).stream().map(Entry::getFile).collect(Collectors.toList());
+	}
+
+	// Каталоги, прочитанные при последнем обновлении, и взятые из индекса без чтения
+	public int getListedDirectories() {
+		return listed.get();
+	}
+
+	public int getReusedDirectories() {
+		return reused.get();
+	}
+
+	// null, если каталог исчез во время обхода
+	private Directory scan(String path) {
+		Path dir = path.isEmpty() ? root : root.resolve(path);
+		try {
+			long now = System.currentTimeMillis();
+			BasicFileAttributes attributes = Files.readAttributes(dir, BasicFileAttributes.class);
+			long lastModified = attributes.lastModifiedTime().toMillis();
+			Directory known = directories.get(path);
+			if (known != null && known.lastModified == lastModified && lastModified < known.scanned - RACY_INTERVAL) {
+				List<Entry> children = restat(known.children);
+				if (children != null) {
+					reused.incrementAndGet();
+					return new Directory(lastModified, known.scanned, children);
+				}
+			}
+			listed.incrementAndGet();
+			List<Entry> children = new ArrayList<>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path child : stream) {
+					Entry entry = stat(child, path.isEmpty() ? child.getFileName().toString() : path + "/" + child.getFileName());
+					if (entry != null) {
+						children.add(entry);
+					}
+				}
+			}
+			return new Directory(lastModified, now, children);
+		} catch (NoSuchFileException e) {
+			if (path.isEmpty()) {
+				throw new UncheckedIOException(e);
+			}
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Заново читает атрибуты известных файлов каталога; null, если какой-то из
+	// них исчез или сменил тип, и каталог нужно перечитать
+	private List<Entry> restat(List<Entry> known) throws IOException {
+		List<Entry> children = new ArrayList<>(known.size());
+		for (Entry old : known) {
+			Entry entry = stat(old.file, old.path);
+			if (entry == null || entry.directory != old.directory) {
+				return null;
+			}
+			children.add(entry);
+		}
+		return children;
+	}
+
+	// null для исчезнувших файлов и ссылок на каталоги
+	private static Entry stat(Path file, String path) throws IOException {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			if (attributes.isSymbolicLink()) {
+				attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				if (attributes.isDirectory()) {
+					return null;
+				}
+			}
+			return attributes.isDirectory() || attributes.isRegularFile() ? new Entry(file, path, attributes) : null;
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static Pattern compile(String glob) {
+		StringBuilder regex = new StringBuilder();
+		boolean alternatives = false;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+				if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+					regex.append("(?:.*/)?");
+					i += 2;
+				} else {
+					regex.append(".*");
+					i++;
+				}
+			} else if (c == '*') {
+				regex.append("[^/]*");
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else if (c == '{') {
+				regex.append("(?:");
+				alternatives = true;
+			} else if (c == '}' && alternatives) {
+				regex.append(')');
+				alternatives = false;
+			} else if (c == ',' && alternatives) {
+				regex.append('|');
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,342 @@
+package com.rogaiopytov;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+// Проверяет собранный WAR по хешам, которые rik:hash записал в MANIFEST.MF:
+// X-<АЛГОРИТМ>-<файл> сверяются с текущими исходниками, X-Merkle-<АЛГОРИТМ> -
+// с корнем заново построенного дерева Меркла. Архив не распаковывается:
+// манифест и записи читаются потоками из ZipFile, а CRC32 каждой записи и
+// хеши из META-INF/rik-digests.txt (build с archiver=rik) проверяются
+// параллельно за одно чтение.
+@Mojo(name = "verify", threadSafe = true)
+public class VerifyMojo extends AbstractMojo {
+
+	private static final String MERKLE_PREFIX = "X-Merkle-";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Component
+	private MavenProject project;
+
+	// По умолчанию target/<finalName>.war
+	@Parameter(property = "war")
+	private File war;
+
+	@Parameter(property = "src", defaultValue = "src")
+	private String src;
+
+	// Количество потоков для проверки записей и хеширования исходников
+	@Parameter(property = "threads", defaultValue = "1")
+	private int threads;
+
+	// Проверять CRC32 всех записей архива и хеши из META-INF/rik-digests.txt
+	@Parameter(property = "checkEntries", defaultValue = "true")
+	private boolean checkEntries;
+
+	private final String logPrefix = "Verify Goal";
+
+	// Алгоритм -> (имя файла без расширения -> хеш)
+	private final Map<String, Map<String, String>> fileDigests = new TreeMap<>();
+	// Алгоритм -> корень дерева Меркла
+	private final Map<String, String> merkleRoots = new TreeMap<>();
+	private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File archive = war != null ? war : new File(project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".war");
+		if (!archive.isFile()) {
+			throw new MojoExecutionException(String.format("%s: WAR archive does not exist: %s", logPrefix, archive.getAbsolutePath()));
+		}
+		File directory = new File(String.format("%s/%s", project.getBasedir().toString(), src));
+
+		long started = System.nanoTime();
+		try (ZipFile zip = new ZipFile(archive); ParallelExecutor executor = new ParallelExecutor(threads)) {
+			readManifest(zip);
+			getLog().info(String.format("%s: Manifest of %s has %d file digests and %d Merkle roots", logPrefix, archive.getName(),
+					fileDigests.values().stream().mapToInt(Map::size).sum(), merkleRoots.size()));
+
+			ArchiveDigests archiveDigests = readArchiveDigests(zip);
+			if (checkEntries) {
+				verifyEntries(zip, executor, archiveDigests);
+			}
+			if (fileDigests.isEmpty() && merkleRoots.isEmpty()) {
+				if (archiveDigests == null) {
+					getLog().warn(String.format("%s: No rik:hash digests in the archive, sources are not checked", logPrefix));
+				}
+			} else if (!directory.isDirectory()) {
+				throw new MojoExecutionException(String.format("%s: Provided src directory does not exist or is not a directory: %s",
+						logPrefix, directory.getAbsolutePath()));
+			} else {
+				verifySources(directory.toPath(), executor);
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException(String.format("%s: Error reading archive: %s", logPrefix, archive.getAbsolutePath()), e);
+		}
+
+		long elapsed = (System.nanoTime() - started) / 1_000_000;
+		if (!problems.isEmpty()) {
+			Collections.sort(problems);
+			for (String problem : problems) {
+				getLog().error(String.format("%s:   %s", logPrefix, problem));
+			}
+			throw new MojoFailureException(String.format("%s: %d integrity problems in %s (checked in %d ms)", logPrefix,
+					problems.size(), archive.getAbsolutePath(), elapsed));
+		}
+		getLog().info(String.format("%s: %s verified in %d ms", logPrefix, archive.getName(), elapsed));
+	}
+
+	private void readManifest(ZipFile zip) throws IOException, MojoExecutionException {
+		ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+		if (entry == null) {
+			throw new MojoExecutionException(String.format("%s: Archive has no %s: %s", logPrefix, JarFile.MANIFEST_NAME, zip.getName()));
+		}
+		Manifest manifest;
+		try (InputStream in = zip.getInputStream(entry)) {
+			manifest = new Manifest(in);
+		}
+
+		for (Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet()) {
+			String name = ((Attributes.Name) attribute.getKey()).toString();
+			String value = (String) attribute.getValue();
+			if (name.startsWith(MERKLE_PREFIX)) {
+				merkleRoots.put(name.substring(MERKLE_PREFIX.length()), value);
+				continue;
+			}
+			// X-<АЛГОРИТМ>-<файл>: в имени алгоритма бывает '-' (SHA-1), в имени класса - нет
+			int separator = name.lastIndexOf('-');
+			if (!name.startsWith("X-") || separator <= 2 || separator == name.length() - 1) {
+				continue;
+			}
+			String algorithm = name.substring(2, separator);
+			try {
+				HashStrategy.forAlgorithm(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				continue;
+			}
+			fileDigests.computeIfAbsent(algorithm, key -> new TreeMap<>()).put(name.substring(separator + 1), value);
+		}
+	}
+
+	private ArchiveDigests readArchiveDigests(ZipFile zip) throws IOException, MojoExecutionException {
+		ZipEntry entry = zip.getEntry(ArchiveDigests.ENTRY_NAME);
+		if (entry == null) {
+			return null;
+		}
+		ArchiveDigests archiveDigests;
+		try (InputStream in = zip.getInputStream(entry)) {
+			archiveDigests = ArchiveDigests.read(in);
+		}
+		try {
+			for (String algorithm : archiveDigests.getAlgorithms()) {
+				HashStrategy.forAlgorithm(algorithm);
+			}
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException(String.format("%s: Unsupported hash algorithm in %s", logPrefix,
+					archiveDigests.getAlgorithms()), e);
+		}
+		getLog().info(String.format("%s: %s lists %d entries with %s digests", logPrefix, ArchiveDigests.ENTRY_NAME,
+				archiveDigests.getDigests().size(), archiveDigests.getAlgorithms()));
+		return archiveDigests;
+	}
+
+	// Записи читаются до конца, как при распаковке, но в память, а не на диск;
+	// ZipFile позволяет читать разные записи из нескольких потоков.
+	private void verifyEntries(ZipFile zip, ParallelExecutor executor, ArchiveDigests archiveDigests) {
+		List<ZipEntry> entries = new ArrayList<>();
+		for (ZipEntry entry : Collections.list(zip.entries())) {
+			if (!entry.isDirectory()) {
+				entries.add(entry);
+			}
+		}
+		Map<String, String[]> expectedDigests = archiveDigests != null ? archiveDigests.getDigests() : Map.of();
+		for (String name : expectedDigests.keySet()) {
+			if (zip.getEntry(name) == null) {
+				problems.add(String.format("%s: entry listed in %s is missing", name, ArchiveDigests.ENTRY_NAME));
+			}
+		}
+
+		long started = System.nanoTime();
+		AtomicLong bytes = new AtomicLong();
+		ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+		ThreadLocal<HashStrategy[]> hashers = ThreadLocal.withInitial(() -> {
+			List<String> algorithms = archiveDigests.getAlgorithms();
+			HashStrategy[] strategies = new HashStrategy[algorithms.size()];
+			try {
+				for (int i = 0; i < strategies.length; i++) {
+					strategies[i] = HashStrategy.forAlgorithm(algorithms.get(i));
+				}
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			return strategies;
+		});
+		executor.forEach(entries, entry -> {
+			byte[] buffer = buffers.get();
+			String[] expected = expectedDigests.get(entry.getName());
+			HashStrategy[] strategies = expected != null ? hashers.get() : new HashStrategy[0];
+			for (HashStrategy strategy : strategies) {
+				strategy.reset();
+			}
+			CRC32 crc = new CRC32();
+			long size = 0;
+			try (InputStream in = zip.getInputStream(entry)) {
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					crc.update(buffer, 0, read);
+					for (HashStrategy strategy : strategies) {
+						strategy.update(ByteBuffer.wrap(buffer, 0, read));
+					}
+					size += read;
+				}
+			} catch (IOException e) {
+				problems.add(String.format("%s: unreadable archive entry (%s)", entry.getName(), e.getMessage()));
+				return;
+			}
+			bytes.addAndGet(size);
+			if ((entry.getCrc() != -1 && entry.getCrc() != crc.getValue()) || (entry.getSize() != -1 && entry.getSize() != size)) {
+				problems.add(String.format("%s: archive entry is corrupt", entry.getName()));
+			}
+			for (int i = 0; i < strategies.length; i++) {
+				if (!HexFormat.of().formatHex(strategies[i].digest()).equalsIgnoreCase(expected[i])) {
+					problems.add(String.format("%s: %s digest differs from %s", entry.getName(),
+							archiveDigests.getAlgorithms().get(i), ArchiveDigests.ENTRY_NAME));
+				}
+			}
+		});
+		getLog().info(String.format("%s: Checked %d archive entries (%d KB) in %d ms", logPrefix, entries.size(),
+				bytes.get() / 1024, (System.nanoTime() - started) / 1_000_000));
+	}
+
+	private void verifySources(Path directory, ParallelExecutor executor) throws IOException, MojoExecutionException {
+		List<Path> sources = SourceIndex.get(getPluginContext(), directory).findFiles("**/*.java");
+
+		Set<String> algorithms = new LinkedHashSet<>(fileDigests.keySet());
+		algorithms.addAll(merkleRoots.keySet());
+		List<String> algorithmList = new ArrayList<>(algorithms);
+		try {
+			new FileHasher(algorithmList);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException(String.format("%s: Unsupported hash algorithm in %s", logPrefix, algorithmList), e);
+		}
+
+		long started = System.nanoTime();
+		ThreadLocal<FileHasher> hashers = ThreadLocal.withInitial(() -> {
+			try {
+				return new FileHasher(algorithmList);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Map<Path, Map<String, String>> actual = new ConcurrentHashMap<>();
+		List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+		executor.forEach(sources, path -> {
+			try {
+				actual.put(path, hashers.get().hash(path));
+			} catch (IOException e) {
+				errors.add(e);
+			}
+		});
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+
+		for (Map.Entry<String, Map<String, String>> algorithmDigests : fileDigests.entrySet()) {
+			verifyFileDigests(algorithmDigests.getKey(), algorithmDigests.getValue(), actual);
+		}
+		for (Map.Entry<String, String> root : merkleRoots.entrySet()) {
+			verifyMerkleRoot(directory, root.getKey(), root.getValue(), actual);
+		}
+		getLog().info(String.format("%s: Hashed %d source files with %s in %d ms", logPrefix, sources.size(), algorithmList,
+				(System.nanoTime() - started) / 1_000_000));
+	}
+
+	// rik:hash пишет в манифест только имя файла без расширения, поэтому
+	// запись считается совпавшей, если совпал хотя бы один файл с таким именем.
+	private void verifyFileDigests(String algorithm, Map<String, String> expected, Map<Path, Map<String, String>> actual) {
+		Map<String, Set<String>> byName = new HashMap<>();
+		for (Map.Entry<Path, Map<String, String>> entry : actual.entrySet()) {
+			byName.computeIfAbsent(baseName(entry.getKey()), key -> new HashSet<>()).add(entry.getValue().get(algorithm));
+		}
+
+		for (Map.Entry<String, String> entry : expected.entrySet()) {
+			Set<String> candidates = byName.get(entry.getKey());
+			if (candidates == null) {
+				problems.add(String.format("%s: source listed in the manifest is missing", entry.getKey()));
+			} else if (!candidates.contains(entry.getValue().toLowerCase())) {
+				problems.add(String.format("%s: %s digest differs from the manifest", entry.getKey(), algorithm));
+			}
+		}
+		for (String name : byName.keySet()) {
+			if (!expected.containsKey(name)) {
+				problems.add(String.format("%s: source is not listed in the manifest (%s)", name, algorithm));
+			}
+		}
+	}
+
+	private void verifyMerkleRoot(Path directory, String algorithm, String expected, Map<Path, Map<String, String>> actual)
+			throws IOException, MojoExecutionException {
+		Map<String, String> digests = new TreeMap<>();
+		for (Map.Entry<Path, Map<String, String>> entry : actual.entrySet()) {
+			String relative = directory.relativize(entry.getKey()).toString().replace(File.separatorChar, '/');
+			digests.put(relative, entry.getValue().get(algorithm));
+		}
+		MerkleTree tree;
+		try {
+			tree = MerkleTree.build(algorithm, digests);
+		} catch (NoSuchAlgorithmException e) {
+			throw new MojoExecutionException(String.format("%s: Unsupported hash algorithm %s", logPrefix, algorithm), e);
+		}
+		if (tree.getRoot().equalsIgnoreCase(expected)) {
+			return;
+		}
+
+		problems.add(String.format("Merkle root %s differs from the manifest (%s)", algorithm, expected));
+		// Индекс, сохранённый rik:hash, позволяет назвать конкретные файлы
+		File indexFile = Paths.get(project.getBuild().getDirectory(), "merkle-index.txt").toFile();
+		if (indexFile.isFile()) {
+			MerkleTree built = MerkleTree.load(indexFile);
+			if (algorithm.equalsIgnoreCase(built.getAlgorithm()) && expected.equalsIgnoreCase(built.getRoot())) {
+				for (String path : tree.diff(built)) {
+					problems.add(String.format("%s: differs from the Merkle index", path));
+				}
+			}
+		}
+	}
+
+	private static String baseName(Path path) {
+		String fileName = path.getFileName().toString();
+		int dotIndex = fileName.lastIndexOf('.');
+		return dotIndex <= 0 ? fileName : fileName.substring(0, dotIndex);
+	}
+}
@@ -0,0 +1,415 @@
+package com.rogaiopytov;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+// Упаковка WAR без maven-war-plugin, файлы читаются прямо из исходных каталогов
+// и jar-зависимостей. Записи копятся пачками примерно по BATCH_BYTES; пачка
+// сжимается параллельно (каждая запись - отдельным Deflater), а затем
+// записывается в архив через ZipWriter по порядку, поэтому результат не
+// зависит от числа потоков. Уже сжатые форматы (jar, картинки, шрифты, .gz) и
+// записи, которые deflate не уменьшает, сохраняются без сжатия.
+// Каждый файл читается один раз: те же байты, что идут в архив, отдаются всем
+// HashStrategy, поэтому хеши записей не стоят отдельного чтения. Хеши
+// дописываются в архив последней записью ArchiveDigests.ENTRY_NAME.
+// Если запись с таким путём уже есть, побеждает первая, как в maven-war-plugin.
+// В инкрементальном режиме (reuse) записи неизменившихся файлов копируются
+// из прежнего архива сырыми байтами, без распаковки и повторного сжатия.
+// С заданным timestamp архив воспроизводим: у всех записей одно время (в UTC,
+// чтобы DOS-время не зависело от часового пояса), а порядок записей задаётся
+// путями.
+public class WarAssembler implements AutoCloseable {
+
+	private static final long BATCH_BYTES = 32 * 1024 * 1024;
+	private static final Set<String> STORED_EXTENSIONS = Set.of("jar", "war", "zip", "gz", "br", "png", "jpg", "jpeg", "gif",
+			"webp", "avif", "woff", "woff2", "mp3", "mp4", "webm", "ogg");
+
+	private static final class Item {
+
+		private final String name;
+		// Файл или готовое содержимое; у каталогов оба null
+		private final Path file;
+		private final byte[] content;
+		private final long size;
+		private final long modified;
+		private final boolean hashed;
+		// Запись прежнего архива, которая копируется как есть
+		private final RawZipReader.Entry reused;
+
+		private Item(String name, Path file, byte[] content, long size, long modified, boolean hashed, RawZipReader.Entry reused) {
+			this.name = name;
+			this.file = file;
+			this.content = content;
+			this.size = size;
+			this.modified = modified;
+			this.hashed = hashed;
+			this.reused = reused;
+		}
+
+		private boolean isDirectory() {
+			return name.endsWith("/");
+		}
+	}
+
+	private static final class Compressed {
+
+		private final int method;
+		private final long crc;
+		private final long size;
+		private final byte[] data;
+		private final int length;
+		private final String[] digests;
+
+		private Compressed(int method, long crc, long size, byte[] data, int length, String[] digests) {
+			this.method = method;
+			this.crc = crc;
+			this.size = size;
+			this.data = data;
+			this.length = length;
+			this.digests = digests;
+		}
+	}
+
+	private final File war;
+	private final ZipWriter out;
+	private final ParallelExecutor executor;
+	private final List<String> algorithms;
+	// HashStrategy и Deflater не потокобезопасны, у каждого потока свои
+	private final ThreadLocal<HashStrategy[]> strategies;
+	private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(this::newDeflater);
+	// Все созданные Deflater: их нативная память освобождается в close()
+	private final List<Deflater> allDeflaters = Collections.synchronizedList(new ArrayList<>());
+	private final ArchiveDigests digests;
+	private final Set<String> names = new HashSet<>();
+	private final List<Item> pending = new ArrayList<>();
+	private long pendingBytes;
+	// null - время изменения файлов
+	private final LocalDateTime timestamp;
+	private int files;
+	private long bytes;
+	// Инкрементальная упаковка: прежний архив, его индекс и хеши записей
+	private RawZipReader previous;
+	private WarIndex previousIndex;
+	private ArchiveDigests previousDigests;
+	private WarIndex index;
+	private Path indexFile;
+	private final long started = System.currentTimeMillis();
+	private int reused;
+
+	public WarAssembler(File war, Manifest manifest, List<String> algorithms, Instant timestamp, ParallelExecutor executor)
+			throws IOException, NoSuchAlgorithmException {
+		this.war = war;
+		this.timestamp = timestamp != null ? LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC) : null;
+		this.executor = executor;
+		this.algorithms = List.copyOf(algorithms);
+		for (String algorithm : algorithms) {
+			HashStrategy.forAlgorithm(algorithm);
+		}
+		this.strategies = ThreadLocal.withInitial(() -> {
+			HashStrategy[] result = new HashStrategy[this.algorithms.size()];
+			try {
+				for (int i = 0; i < result.length; i++) {
+					result[i] = HashStrategy.forAlgorithm(this.algorithms.get(i));
+				}
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			return result;
+		});
+		this.digests = new ArchiveDigests(algorithms);
+		File parent = war.getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Could not create directory: " + parent.getAbsolutePath());
+		}
+		this.out = new ZipWriter(war.toPath());
+
+		ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+		manifest.write(manifestBytes);
+		names.add(JarFile.MANIFEST_NAME);
+		addParents(JarFile.MANIFEST_NAME);
+		pending.add(new Item(JarFile.MANIFEST_NAME, null, manifestBytes.toByteArray(), 0, System.currentTimeMillis(), false, null));
+		if (!algorithms.isEmpty()) {
+			names.add(ArchiveDigests.ENTRY_NAME);
+		}
+	}
+
+	// Включает инкрементальную упаковку, вызывается до добавления файлов. Запись
+	// копируется из previousWar, если у исходного файла те же размер и время
+	// изменения, что записаны в индексе, а у записи previousWar - те же размер и
+	// CRC. Новый индекс пишется в indexFile при close(). Возвращает причину, по
+	// которой прежний архив не используется, или null.
+	public String reuse(Path previousWar, Path indexFile) throws IOException {
+		this.indexFile = indexFile;
+		this.index = new WarIndex();
+		if (previousWar == null) {
+			return "no previous archive";
+		}
+		try {
+			previousIndex = WarIndex.load(indexFile, previousWar);
+			if (previousIndex == null) {
+				return "no index for the previous archive";
+			}
+			previous = new RawZipReader(previousWar);
+			if (!algorithms.isEmpty()) {
+				RawZipReader.Entry entry = previous.get(ArchiveDigests.ENTRY_NAME);
+				if (entry != null) {
+					previousDigests = ArchiveDigests.read(new ByteArrayInputStream(previous.readContent(entry)));
+				}
+				if (previousDigests == null || !previousDigests.getAlgorithms().equals(algorithms)) {
+					previous.close();
+					previous = null;
+					return "digest algorithms changed";
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			if (previous != null) {
+				previous.close();
+				previous = null;
+			}
+			return "previous archive or index is unreadable: " + e.getMessage();
+		}
+	}
+
+	// Добавляет файлы каталога под префиксом prefix ("" или "WEB-INF/classes/").
+	// Порядок - по именам записей, а не по Path, сравнение которых зависит от ОС.
+	public void addTree(File directory, String prefix, Predicate<Path> filter) throws IOException {
+		if (!directory.isDirectory()) {
+			return;
+		}
+		Path root = directory.toPath();
+		Map<String, Path> tree = new TreeMap<>();
+		try (Stream<Path> stream = Files.walk(root)) {
+			stream.filter(Files::isRegularFile).filter(filter)
+					.forEach(file -> tree.put(prefix + root.relativize(file).toString().replace(File.separatorChar, '/'), file));
+		}
+		for (Map.Entry<String, Path> file : tree.entrySet()) {
+			addFile(file.getValue(), file.getKey());
+		}
+	}
+
+	public void addFile(Path file, String name) throws IOException {
+		if (!names.add(name)) {
+			return;
+		}
+		addParents(name);
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		RawZipReader.Entry entry = findReusable(name, size, modified);
+		if (entry != null) {
+			reused++;
+		}
+		pending.add(new Item(name, file, null, size, modified, true, entry));
+		files++;
+		bytes += size;
+		pendingBytes += size;
+		if (pendingBytes >= BATCH_BYTES) {
+			flush();
+		}
+	}
+
+	// Количество файлов в архиве, без каталогов и служебных записей
+	public int getFileCount() {
+		return files;
+	}
+
+	// Исходный размер добавленных файлов
+	public long getBytes() {
+		return bytes;
+	}
+
+	// Файлы, скопированные из прежнего архива без повторного сжатия
+	public int getReusedCount() {
+		return reused;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!algorithms.isEmpty()) {
+				flush();
+				ByteArrayOutputStream content = new ByteArrayOutputStream();
+				digests.write(content);
+				pending.add(new Item(ArchiveDigests.ENTRY_NAME, null, content.toByteArray(), 0, System.currentTimeMillis(), false,
+						null));
+			}
+			flush();
+		} finally {
+			try {
+				out.close();
+			} finally {
+				try {
+					if (previous != null) {
+						previous.close();
+					}
+				} finally {
+					endDeflaters();
+				}
+			}
+		}
+		if (indexFile != null) {
+			index.save(indexFile, war.toPath());
+		}
+	}
+
+	private Deflater newDeflater() {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		allDeflaters.add(deflater);
+		return deflater;
+	}
+
+	// Потоки пула переживают упаковку, поэтому Deflater закрываются явно, а не
+	// сборщиком мусора вместе с ThreadLocal
+	private void endDeflaters() {
+		synchronized (allDeflaters) {
+			for (Deflater deflater : allDeflaters) {
+				deflater.end();
+			}
+			allDeflaters.clear();
+		}
+		deflaters.remove();
+		strategies.remove();
+	}
+
+	private RawZipReader.Entry findReusable(String name, long size, long modified) {
+		if (previous == null) {
+			return null;
+		}
+		WarIndex.Record record = previousIndex.get(name);
+		RawZipReader.Entry entry = previous.get(name);
+		if (record == null || entry == null || !record.matches(size, modified) || record.getCrc() != entry.getCrc()
+				|| entry.getSize() != size) {
+			return null;
+		}
+		return previousDigests == null || previousDigests.getDigests().containsKey(name) ? entry : null;
+	}
+
+	private void flush() throws IOException {
+		List<Compressed> results;
+		try {
+			results = executor.map(pending, this::compress);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for (int i = 0; i < pending.size(); i++) {
+			Item item = pending.get(i);
+			if (item.isDirectory()) {
+				out.writeDirectory(item.name, dosTime(item.modified));
+				continue;
+			}
+			Compressed result = results.get(i);
+			out.write(item.name, result.method, result.crc, result.size, dosTime(item.modified), result.data, result.length);
+			if (result.digests != null) {
+				digests.put(item.name, result.digests);
+			}
+			// Файл, изменённый меньше чем за 2 секунды до упаковки, мог измениться
+			// ещё раз в ту же единицу времени ФС, и в следующий раз сжимается заново
+			if (index != null && item.file != null) {
+				index.put(item.name, item.size, item.modified < started - 2000 ? item.modified : -1, result.crc);
+			}
+		}
+		pending.clear();
+		pendingBytes = 0;
+	}
+
+	// Для каталогов null, они пишутся через ZipWriter.writeDirectory
+	private Compressed compress(Item item) {
+		if (item.isDirectory()) {
+			return null;
+		}
+		if (item.reused != null) {
+			try {
+				byte[] raw = previous.readRaw(item.reused);
+				return new Compressed(item.reused.getMethod(), item.reused.getCrc(), item.size, raw, raw.length,
+						previousDigests != null ? previousDigests.getDigests().get(item.name) : null);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		byte[] data;
+		try {
+			data = item.file != null ? Files.readAllBytes(item.file) : item.content;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data);
+
+		String[] hex = null;
+		if (item.hashed && !algorithms.isEmpty()) {
+			HashStrategy[] threadStrategies = strategies.get();
+			hex = new String[threadStrategies.length];
+			for (int i = 0; i < threadStrategies.length; i++) {
+				threadStrategies[i].reset();
+				threadStrategies[i].update(ByteBuffer.wrap(data));
+				hex[i] = HexFormat.of().formatHex(threadStrategies[i].digest());
+			}
+		}
+
+		if (data.length > 0 && !STORED_EXTENSIONS.contains(extension(item.name))) {
+			Deflater deflater = deflaters.get();
+			deflater.reset();
+			deflater.setInput(data);
+			deflater.finish();
+			// Выход не больше входа: если deflate не уменьшил запись, она сохраняется как есть
+			byte[] deflated = new byte[data.length];
+			int length = 0;
+			while (!deflater.finished() && length < deflated.length) {
+				length += deflater.deflate(deflated, length, deflated.length - length);
+			}
+			if (deflater.finished()) {
+				return new Compressed(ZipEntry.DEFLATED, crc.getValue(), data.length, deflated, length, hex);
+			}
+		}
+		return new Compressed(ZipEntry.STORED, crc.getValue(), data.length, data, data.length, hex);
+	}
+
+	private void addParents(String name) {
+		int slash = name.indexOf('/');
+		while (slash >= 0) {
+			String directory = name.substring(0, slash + 1);
+			if (names.add(directory)) {
+				pending.add(new Item(directory, null, null, 0, System.currentTimeMillis(), false, null));
+			}
+			slash = name.indexOf('/', slash + 1);
+		}
+	}
+
+	private long dosTime(long modified) {
+		return ZipWriter.dosTime(timestamp != null ? timestamp
+				: LocalDateTime.ofInstant(Instant.ofEpochMilli(modified), ZoneId.systemDefault()));
+	}
+
+	private static String extension(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 || dot < name.lastIndexOf('/') ? "" : name.substring(dot + 1).toLowerCase();
+	}
+}
@@ -0,0 +1,109 @@
+package com.rogaiopytov;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Размер, время изменения исходного файла и CRC каждой записи WAR, собранного
+// WarAssembler. По нему следующая инкрементальная упаковка понимает, какие
+// записи прежнего архива можно скопировать без повторного сжатия. Индекс
+// относится к конкретному файлу архива: в заголовке его размер и время
+// изменения, и для другого архива индекс не загружается.
+// # rik war index v1 \t <размер архива> \t <mtime архива>
+// <путь записи> \t <размер> \t <mtime, -1 - не доверять> \t <crc hex>
+public class WarIndex {
+
+	private static final String HEADER = "# rik war index v1";
+
+	public static final class Record {
+
+		private final long size;
+		private final long modified;
+		private final long crc;
+
+		private Record(long size, long modified, long crc) {
+			this.size = size;
+			this.modified = modified;
+			this.crc = crc;
+		}
+
+		// Файл не менялся, если у него те же размер и время изменения
+		public boolean matches(long size, long modified) {
+			return this.modified >= 0 && this.size == size && this.modified == modified;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+	}
+
+	private final Map<String, Record> records;
+
+	public WarIndex() {
+		this.records = new TreeMap<>();
+	}
+
+	private WarIndex(Map<String, Record> records) {
+		this.records = records;
+	}
+
+	// null, если индекса нет или он записан для другого архива.
+	// IOException означает повреждённый файл.
+	public static WarIndex load(Path file, Path war) throws IOException {
+		if (!Files.isRegularFile(file) || !Files.isRegularFile(war)) {
+			return null;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith(HEADER + "\t")) {
+				throw new IOException("Unknown WAR index format: " + header);
+			}
+			String[] archive = header.split("\t");
+			if (archive.length != 3 || Long.parseLong(archive[1]) != Files.size(war)
+					|| Long.parseLong(archive[2]) != Files.getLastModifiedTime(war).toMillis()) {
+				return null;
+			}
+			Map<String, Record> records = new HashMap<>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				if (parts.length != 4) {
+					throw new IOException("Malformed WAR index line: " + line);
+				}
+				records.put(parts[0], new Record(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3], 16)));
+			}
+			return new WarIndex(records);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed WAR index: " + file, e);
+		}
+	}
+
+	public Record get(String name) {
+		return records.get(name);
+	}
+
+	public void put(String name, long size, long modified, long crc) {
+		records.put(name, new Record(size, modified, crc));
+	}
+
+	// Пишется во временный файл и переименовывается, чтобы прерванная запись
+	// не оставила обрезанный индекс
+	public void save(Path file, Path war) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			writer.write(String.format("%s\t%d\t%d\n", HEADER, Files.size(war), Files.getLastModifiedTime(war).toMillis()));
+			for (Map.Entry<String, Record> entry : new TreeMap<>(records).entrySet()) {
+				Record record = entry.getValue();
+				writer.write(String.format("%s\t%d\t%d\t%x\n", entry.getKey(), record.size, record.modified, record.crc));
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,127 @@
+package com.rogaiopytov;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Потоковый XXH64 (seed 0) по спецификации xxHash. Данные приходят блоками
+// произвольной длины, неполная 32-байтная полоса между блоками хранится в
+// memory. Результат - 8 байт в каноническом big-endian порядке, как у
+// утилиты xxh64sum.
+public final class Xxh64 implements HashStrategy {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	private long totalLength;
+	private final ByteBuffer memory = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+
+	public Xxh64() {
+		reset();
+	}
+
+	@Override
+	public void reset() {
+		v1 = PRIME1 + PRIME2;
+		v2 = PRIME2;
+		v3 = 0;
+		v4 = -PRIME1;
+		totalLength = 0;
+		memory.clear();
+	}
+
+	@Override
+	public void update(ByteBuffer data) {
+		ByteBuffer input = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+		int length = input.remaining();
+		data.position(data.limit());
+		totalLength += length;
+
+		int position = 0;
+		if (memory.position() > 0) {
+			int fill = Math.min(memory.remaining(), length);
+			memory.put(input.slice(0, fill));
+			position = fill;
+			if (memory.hasRemaining()) {
+				return;
+			}
+			stripe(memory, 0);
+			memory.clear();
+		}
+		for (; position + 32 <= length; position += 32) {
+			stripe(input, position);
+		}
+		if (position < length) {
+			memory.put(input.slice(position, length - position));
+		}
+	}
+
+	@Override
+	public byte[] digest() {
+		long hash;
+		if (totalLength >= 32) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = merge(hash, v1);
+			hash = merge(hash, v2);
+			hash = merge(hash, v3);
+			hash = merge(hash, v4);
+		} else {
+			hash = PRIME5;
+		}
+		hash += totalLength;
+
+		int remaining = memory.position();
+		int position = 0;
+		for (; position + 8 <= remaining; position += 8) {
+			hash ^= round(0, memory.getLong(position));
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		if (position + 4 <= remaining) {
+			hash ^= (memory.getInt(position) & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+			position += 4;
+		}
+		for (; position < remaining; position++) {
+			hash ^= (memory.get(position) & 0xFFL) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+
+		reset();
+		byte[] result = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			result[i] = (byte) hash;
+			hash >>>= 8;
+		}
+		return result;
+	}
+
+	private void stripe(ByteBuffer buffer, int offset) {
+		v1 = round(v1, buffer.getLong(offset));
+		v2 = round(v2, buffer.getLong(offset + 8));
+		v3 = round(v3, buffer.getLong(offset + 16));
+		v4 = round(v4, buffer.getLong(offset + 24));
+	}
+
+	private static long round(long accumulator, long input) {
+		accumulator += input * PRIME2;
+		accumulator = Long.rotateLeft(accumulator, 31);
+		return accumulator * PRIME1;
+	}
+
+	private static long merge(long hash, long value) {
+		hash ^= round(0, value);
+		return hash * PRIME1 + PRIME4;
+	}
+}
@@ -0,0 +1,151 @@
+package com.rogaiopytov;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.zip.ZipEntry;
+
+// Запись zip-архива из уже подготовленных записей. В отличие от ZipOutputStream,
+// принимает готовые CRC, размеры и сырой deflate-поток, поэтому записи можно
+// сжать параллельно (или взять из прежнего архива) и только потом
+// последовательно склеить. Имена пишутся в UTF-8, дескрипторы данных не
+// используются. ZIP64 включается, только если записей больше 65535 или архив
+// больше 4 ГБ; сама запись должна быть меньше 4 ГБ.
+public class ZipWriter implements AutoCloseable {
+
+	private static final long LIMIT = 0xFFFFFFFFL;
+	private static final int UTF8_FLAG = 0x800;
+
+	private final OutputStream out;
+	private final ByteArrayOutputStream central = new ByteArrayOutputStream();
+	private long offset;
+	private long count;
+
+	public ZipWriter(Path file) throws IOException {
+		this.out = new BufferedOutputStream(new FileOutputStream(file.toFile()), 64 * 1024);
+	}
+
+	// method - ZipEntry.STORED или ZipEntry.DEFLATED; data - данные в том виде,
+	// в каком они лежат в архиве; size - исходный размер
+	public void write(String name, int method, long crc, long size, long dosTime, byte[] data, int length) throws IOException {
+		if (size >= LIMIT || length >= LIMIT) {
+			throw new IOException("Zip entries of 4 GB and more are not supported: " + name);
+		}
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int version = method == ZipEntry.DEFLATED ? 20 : 10;
+		boolean zip64 = offset >= LIMIT;
+
+		writeInt(out, 0x04034b50);
+		writeShort(out, version);
+		writeShort(out, UTF8_FLAG);
+		writeShort(out, method);
+		writeInt(out, dosTime);
+		writeInt(out, crc);
+		writeInt(out, length);
+		writeInt(out, size);
+		writeShort(out, nameBytes.length);
+		writeShort(out, 0);
+		out.write(nameBytes);
+		out.write(data, 0, length);
+
+		writeInt(central, 0x02014b50);
+		writeShort(central, zip64 ? 45 : 20);
+		writeShort(central, zip64 ? 45 : version);
+		writeShort(central, UTF8_FLAG);
+		writeShort(central, method);
+		writeInt(central, dosTime);
+		writeInt(central, crc);
+		writeInt(central, length);
+		writeInt(central, size);
+		writeShort(central, nameBytes.length);
+		writeShort(central, zip64 ? 12 : 0);
+		writeShort(central, 0);
+		writeShort(central, 0);
+		writeShort(central, 0);
+		writeInt(central, 0);
+		writeInt(central, zip64 ? LIMIT : offset);
+		central.write(nameBytes);
+		if (zip64) {
+			writeShort(central, 0x0001);
+			writeShort(central, 8);
+			writeLong(central, offset);
+		}
+
+		offset += 30 + nameBytes.length + length;
+		count++;
+	}
+
+	public void writeDirectory(String name, long dosTime) throws IOException {
+		write(name, ZipEntry.STORED, 0, 0, dosTime, new byte[0], 0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			long centralOffset = offset;
+			central.writeTo(out);
+			long centralSize = central.size();
+			if (count > 0xFFFF || centralOffset >= LIMIT || centralSize >= LIMIT) {
+				long zip64Offset = centralOffset + centralSize;
+				writeInt(out, 0x06064b50);
+				writeLong(out, 44);
+				writeShort(out, 45);
+				writeShort(out, 45);
+				writeInt(out, 0);
+				writeInt(out, 0);
+				writeLong(out, count);
+				writeLong(out, count);
+				writeLong(out, centralSize);
+				writeLong(out, centralOffset);
+
+				writeInt(out, 0x07064b50);
+				writeInt(out, 0);
+				writeLong(out, zip64Offset);
+				writeInt(out, 1);
+			}
+			writeInt(out, 0x06054b50);
+			writeShort(out, 0);
+			writeShort(out, 0);
+			writeShort(out, (int) Math.min(count, 0xFFFF));
+			writeShort(out, (int) Math.min(count, 0xFFFF));
+			writeInt(out, Math.min(centralSize, LIMIT));
+			writeInt(out, Math.min(centralOffset, LIMIT));
+			writeShort(out, 0);
+		} finally {
+			out.close();
+		}
+	}
+
+	// Время в формате MS-DOS: дата в старших 16 битах, время в младших, секунды
+	// округляются вниз до чётных. Время вне 1980-2107 прижимается к границам.
+	public static long dosTime(LocalDateTime time) {
+		if (time.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		if (time.getYear() > 2107) {
+			time = LocalDateTime.of(2107, 12, 31, 23, 59, 58);
+		}
+		return ((long) (time.getYear() - 1980) << 25) | (time.getMonthValue() << 21) | (time.getDayOfMonth() << 16)
+				| (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream out, long value) throws IOException {
+		writeShort(out, (int) (value & 0xFFFF));
+		writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+	}
+
+	private static void writeLong(OutputStream out, long value) throws IOException {
+		writeInt(out, value & LIMIT);
+		writeInt(out, value >>> 32);
+	}
+}